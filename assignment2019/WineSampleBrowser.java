@@ -9,6 +9,7 @@ package assignment2019;
 
 import assignment2019.codeprovided.*;
 import javax.swing.*;
+import java.nio.file.Paths;
 
 public class WineSampleBrowser {
 	
@@ -24,6 +25,9 @@ public class WineSampleBrowser {
 		String redWineFile = args[0];
 		String whiteWineFile = args[1];
 		String queriesFile = args[2];
+		// Binary snapshot of the datasets, next to the red wine file unless given as a fourth argument
+		String snapshotFile = args.length > 3 ? args[3] : Paths.get(redWineFile).resolveSibling("winecellar.snapshot").toString();
+		AbstractWineSampleCellar.setSnapshotFile(snapshotFile);
 		
 		// Initialise dataset and GUI
 		WineSampleCellar cellar = new WineSampleCellar(redWineFile, whiteWineFile, queriesFile);
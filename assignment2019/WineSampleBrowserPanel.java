@@ -21,6 +21,14 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
     private double[] max;
     private double[] min;
     private double[] avg;
+
+    // Results after each filter in turn over filterBase (the last being the current results), with the
+    // filter each was made by, so that a new filter only tests the samples the previous ones let through
+    // and removing filters goes back down the stack instead of querying again
+    private List<List<WineSample>> filterResults = new ArrayList<>();
+    private List<QueryCondition> filterConditions = new ArrayList<>();
+    private List<WineSample> filterBase;
+    private int[] filterBaseVersions;
     
     // Constructor
     public WineSampleBrowserPanel(AbstractWineSampleCellar cellar) {
@@ -57,6 +65,7 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
      * addListeners method - adds relevant actionListeners to the GUI components
      * You will need to listen (at least) to the following:
      * - buttonAddFilter
+     * - buttonRemoveLastFilter
      * - buttonClearFilters
      * - comboWineTypes, if you want the samplesTextArea to be updated to show only the wine samples
      *            specified by this combobox
@@ -64,6 +73,7 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
      */
     public void addListeners() {
 	buttonAddFilter.addActionListener(event -> addFilter());
+	buttonRemoveLastFilter.addActionListener(event -> removeLastFilter());
 	buttonClearFilters.addActionListener(event -> clearFilters());
 	comboWineTypes.addActionListener(event -> executeQuery());
     }
@@ -103,6 +113,22 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
 	}
     }
 
+    /**
+     * removeLastFilter method - removes the most recently added filter when the button
+     * buttonRemoveLastFilter is clicked, going back to the results kept from before it was added
+     */
+    public void removeLastFilter() {
+	if (queryConditionList.isEmpty()) {
+	    return;
+	}
+	queryConditionList.remove(queryConditionList.size() - 1);
+	queryConditionsTextArea.setText(null);
+	for (QueryCondition condition : queryConditionList) {
+	    queryConditionsTextArea.append(condition.toString() +"; ");
+	}
+	executeQuery();
+    }
+
     /**
      * clearFilters method - clears all filters from the queryConditionsList ArrayList and updates
      * the relevant GUI components when the button buttonClearFilters is clicked
@@ -151,30 +177,18 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
 	Arrays.fill(max, filteredListSize == 0 ? 0 : Double.NEGATIVE_INFINITY);
 	Arrays.fill(min, filteredListSize == 0 ? 0 : Double.POSITIVE_INFINITY);
 	Arrays.fill(avg, 0);
-	// Create a new array to hold lines of text for each sample
-	List<String> wineList = new ArrayList<String>();
+	// Build the text a line per sample
+	StringBuilder wineList = new StringBuilder();
 	// We can grab column headings from the same list as populates the combo box!
-	wineList.add("ID\t"+"Wine Type\t"+ String.join("\t", propertyNames) +"\t");
+	wineList.append("ID\t"+"Wine Type\t"+ String.join("\t", propertyNames) +"\t");
+	// Temporary array to iterate efficiently over numeric properties, refilled for each sample
+	// Properties are copied in WineProperty order, which must be the same as in propertyNames...
+	double[] wineSample = new double[numberOfProperties];
 	for (WineSample wine : filteredWineSampleList) {
-	    // Create temporary array to iterate efficiently over numeric properties
-	    // These must be in the same order as in propertyNames...
-	    double[] wineSample = {
-		wine.getFixedAcidity(),
-		wine.getVolatileAcidity(),
-		wine.getCitricAcid(),
-		wine.getResidualSugar(),
-		wine.getChlorides(),
-		wine.getFreeSulfurDioxide(),
-		wine.getTotalSulfurDioxide(),
-		wine.getDensity(),
-		wine.getpH(),
-		wine.getSulphates(),
-		wine.getAlcohol(),
-		wine.getQuality()
-	    };
+	    wine.getProperties(wineSample);
 	    // Add text to array... please forgive a couple of cheap hacks to make columns line up here!
 	    // This layout seems to work on Windows JRE 1.8.0_201, can't guarantee other platforms
-	    wineList.add(String.join("\t", new String[] {
+	    wineList.append('\n').append(String.join("\t", new String[] {
 		String.valueOf(wine.getId()),
 		String.valueOf(wine.getType()),
 		String.valueOf(wineSample[0]),
@@ -202,22 +216,24 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
 	    avg[p] /= filteredListSize;
 	}
 	// Update text areas with results
-	filteredWineSamplesTextArea.setText(String.join("\n", wineList));
+	filteredWineSamplesTextArea.setText(wineList.toString());
 	filteredWineSamplesTextArea.setCaretPosition(0);
 	// And then...
 	updateStatistics();
     }
 
     /**
-     * executeQuery method - executes the complete query to the relevant wine list
+     * executeQuery method - executes the complete query to the relevant wine list.
+     * Filters are applied one at a time, each to the results of the one before (adding a condition can
+     * only narrow them), and those results are kept; see refineFilters.
      */
     public void executeQuery() {
 	// Get wine type from current value of combo box
 	WineType wineType = WineType.valueOf((String) comboWineTypes.getSelectedItem());
-	// Set filtered list to result of query if conditions given...
-	if (!queryConditionList.isEmpty()) {
-	    Query query = new Query(cellar.getWineSampleList(wineType), queryConditionList, wineType);
-	    filteredWineSampleList = query.solveQuery();
+	refineFilters(wineType);
+	// Set filtered list to result of the last filter if conditions given...
+	if (!filterResults.isEmpty()) {
+	    filteredWineSampleList = filterResults.get(filterResults.size() - 1);
 	}
 	// ...else get the whole list for the current wine type
 	else {
@@ -229,4 +245,56 @@ public class WineSampleBrowserPanel extends AbstractWineSampleBrowserPanel {
 	// And then...
 	updateWineList();
     }
+
+    /**
+     * refineFilters method - brings the stack of per-filter results in line with queryConditionList:
+     * results kept for filters since removed are dropped, and each filter not yet applied is tested
+     * against the results of the one before only, then sorted as Query.solveQuery would sort them.
+     * Everything is started again if the wine type has changed or its samples have been reloaded
+     * or changed since.
+     *
+     * @param wineType the wine type being browsed
+     */
+    private void refineFilters(WineType wineType) {
+	List<WineSample> wineList = cellar.getWineSampleList(wineType);
+	List<WineSampleRack> racks = cellar.getWineSampleRacks(wineType);
+	int[] versions = new int[racks.size()];
+	for (int r=0; r < versions.length; r++) {
+	    versions[r] = racks.get(r).getVersion();
+	}
+	if (wineList != filterBase || !Arrays.equals(versions, filterBaseVersions)) {
+	    filterResults.clear();
+	    filterConditions.clear();
+	    filterBase = wineList;
+	    filterBaseVersions = versions;
+	}
+	// Keep the results of the filters still at the start of queryConditionList...
+	int kept = 0;
+	while (kept < filterConditions.size() && kept < queryConditionList.size()
+	       && filterConditions.get(kept) == queryConditionList.get(kept)) {
+	    kept++;
+	}
+	while (filterResults.size() > kept) {
+	    filterResults.remove(filterResults.size() - 1);
+	    filterConditions.remove(filterConditions.size() - 1);
+	}
+	// ...then apply the rest one by one
+	while (kept < queryConditionList.size()) {
+	    QueryCondition condition = queryConditionList.get(kept);
+	    List<WineSample> results;
+	    if (kept == 0) {
+		// the first filter runs over the whole list, so goes through the cellar's query cache
+		results = cellar.solveQuery(new Query(wineList, Collections.singletonList(condition), wineType));
+	    }
+	    else {
+		// filtering keeps the previous order, in which samples tying on every earlier property are in
+		// list order, so the stable sort below ends in the order solving the whole query would give
+		results = QueryEngine.filter(filterResults.get(kept - 1), Collections.singletonList(condition));
+		QueryEngine.order(results, queryConditionList.subList(0, kept + 1));
+	    }
+	    filterResults.add(results);
+	    filterConditions.add(condition);
+	    kept++;
+	}
+    }
 }
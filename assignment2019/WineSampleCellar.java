@@ -9,9 +9,13 @@ package assignment2019;
 
 import assignment2019.codeprovided.*;
 import java.util.*;
+import java.util.function.IntPredicate;
 import java.io.*;
 
 public class WineSampleCellar extends AbstractWineSampleCellar {
+
+    // Results printed per batch by displayQueryResults
+    private static final int PAGE_SIZE = 1000;
     
     /**
      * constructor - reads wine sample datasets and list of queries from text file,
@@ -19,13 +23,21 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      */
     public WineSampleCellar(String redWineFilename, String whiteWineFilename, String queryFilename) {
 	super(redWineFilename, whiteWineFilename, queryFilename);
-	// Fetch, answer and print queries
+	// Fetch, answer (all together, see solveQueries; aggregate queries on their own) and print queries
 	List<String> textQueries = readQueryFile(queryFilename);	
 	List<Query> queries = readQueries(textQueries);
+	List<Query> listQueries = new ArrayList<>();
+	for (Query query : queries) {
+	    if (!query.isAggregate()) {
+		listQueries.add(query);
+	    }
+	}
+	Iterator<List<WineSample>> results = solveQueries(listQueries).iterator();
 	for (int q=0; q < queries.size(); q++) {
 	    System.out.println("------------------------- QUERY #"+ (q+1) +" -------------------------");
 	    System.out.println(textQueries.get(q));
-	    displayQueryResults(queries.get(q));
+	    Query query = queries.get(q);
+	    System.out.println(query.isAggregate() ? displayAggregateResult(query.aggregateQuery()) : displayWineList(results.next()));
 	}
 	System.out.println("------------------------------------------------------------");
     }
@@ -68,6 +80,7 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * in the handout (section "The queries")
      * 2 - assesses their content, creates the relevant QueryCondition and Query objects 
      * 3 - and then returns a List of the Query objects
+     * (each line is read by QueryParser, which also understands "or" between conditions)
      *
      * @param queryList The List of Strings from the readQueryFile method
      * @return List of all Query objects
@@ -76,40 +89,9 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
 	List<Query> queryObjectList = new ArrayList<>();
 	
 	for (String query : queryList) {
-	    
-	    // Split query into tokens representing keywords, wine types or conditions
-	    List<String> queryTokens = new ArrayList<>(Arrays.asList(query.split("(?<=\\w)\\s+(?=\\w)")));
-	    // Remove any remaining spaces
-	    queryTokens.replaceAll(s -> s.replaceAll("\\s", ""));
-	    // Filter extraneous keywords
-	    queryTokens.removeIf(s -> s.matches("select|and|or"));
-	    // Partition remainder of tokens into those representing WineTypes and QueryConditions
-	    int where = queryTokens.indexOf("where");
-	    List<String> typeTokens = queryTokens.subList(0, where);
-	    List<String> conditionTokens = queryTokens.subList(where+1, queryTokens.size());
-	    
-	    // If there is more than one element in typeTokens, select all wines
-	    WineType wineType = WineType.valueOf(
-		typeTokens.size() > 1 ? "ALL" : typeTokens.get(0).toUpperCase()
-	    );
-	
-	    List<QueryCondition> queryConditionList = new ArrayList<>();
-	    while (!conditionTokens.isEmpty()) {
-		// Split condition into separate tokens along word boundaries:
-		String[] tokens = conditionTokens.remove(0).split("\\b");
-		List<String> conditions = new ArrayList<String>(Arrays.asList(tokens));
-		// First take the property code...
-		WineProperty wineProperty = WineProperty.fromFileIdentifier(conditions.remove(0));
-		// ...then grab the operator...
-		String operator = conditions.remove(0);
-		// ... then interpret the remainder as a numeric value (this handles the radix point!)
-		double value = Double.parseDouble(String.join("", conditions));
-		// And finally, process all of that as a QueryCondition.
-		queryConditionList.add(new QueryCondition(wineProperty, operator, value));
-	    }
-	    
-	    // Create new Query object and add to list
-	    queryObjectList.add(new Query(getWineSampleList(wineType), queryConditionList, wineType));
+	    // Parse (or look up the already parsed) query, then run it over the wines of its type
+	    PreparedQuery prepared = QueryParser.prepare(query);
+	    queryObjectList.add(prepared.bind(getWineSampleList(prepared.getWineType())));
 	}
 	return queryObjectList;
     }
@@ -117,12 +99,14 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
     /**
      * updateCellar method - updates wineSampleRacks to contain 'also' an additional list 
      * containing ALL wine samples (in this case red and white)
+     * (this is a view over the red and white racks rather than a copy, so it stays up to date as they grow)
      */
     public void updateCellar() {
-	List<WineSample> allWines = new ArrayList<>();
-	allWines.addAll(wineSampleRacks.get(WineType.RED));
-	allWines.addAll(wineSampleRacks.get(WineType.WHITE));
-	wineSampleRacks.put(WineType.ALL, allWines);
+	WineSampleRack redWines = getWineSampleRack(WineType.RED);
+	WineSampleRack whiteWines = getWineSampleRack(WineType.WHITE);
+	wineSampleRacks.put(WineType.ALL, new WineSampleRackView(redWines, whiteWines));
+	// Results cached over the previous lists no longer apply
+	queryCache.clear();
     }
 
     /**
@@ -131,8 +115,24 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @param query The Query object to be printed to console
      */
     public void displayQueryResults(Query query) {
-	List<WineSample> filteredWineList = query.solveQuery();
-	System.out.println(displayWineList(filteredWineList));
+	if (query.isAggregate()) {
+	    System.out.println(displayAggregateResult(query.aggregateQuery()));
+	    return;
+	}
+	// Print the results a page at a time as the query's cursor finds them, so the whole list of results
+	// is never held (the text is the same as displayWineList gives). The heading needs the number of
+	// results up front: a single page is its own count, but a longer result is counted first by
+	// countQuery, which makes no samples but does go over every row once more before the first is printed
+	QueryCursor cursor = query.cursor();
+	List<WineSample> page = cursor.nextPage(PAGE_SIZE);
+	System.out.println(matchHeading(cursor.hasNext() ? query.countQuery() : page.size()));
+	for (; !page.isEmpty(); page = cursor.nextPage(PAGE_SIZE)) {
+	    StringBuilder text = new StringBuilder();
+	    for (WineSample wine : page) {
+		text.append(displayWineSample(wine)).append('\n');
+	    }
+	    System.out.print(text);
+	}
     }
 
     /**
@@ -143,59 +143,57 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      */
     public String displayWineList(List<WineSample> wineList) {
 	List<String> text = new ArrayList<>();
-	int n = wineList.size();
-	text.add(n +" wine sample"+ (n == 1 ? " matches" : "s match") +" your query.");
+	text.add(matchHeading(wineList.size()));
 	for (WineSample wine : wineList) {
-	    text.add(
-		"Sample #"+ wine.getId() +": "+
-		wine.getType() +" wine, "+
-		String.join(", ", new String[] {
-		    "f_acid: "+ wine.getFixedAcidity(),
-		    "v_acid: "+ wine.getVolatileAcidity(),
-		    "c_acid: "+ wine.getCitricAcid(),
-		    "r_sugar: "+ wine.getResidualSugar(),
-		    "chlorid: "+ wine.getChlorides(),
-		    "f_sulf: "+ wine.getFreeSulfurDioxide(),
-		    "t_sulf: "+ wine.getTotalSulfurDioxide(),
-		    "dens: "+ wine.getDensity(),
-		    "pH: "+ wine.getpH(),
-		    "sulph: "+ wine.getSulphates(),
-		    "alc: "+ wine.getAlcohol(),
-		    "qual: "+ wine.getQuality()
-		})
-	    );
+	    text.add(displayWineSample(wine));
 	}
 	return String.join("\n", text);
     }
 
     /**
-     * PropertyComparator.java
-     *
-     * Comparator class necessary to sort the contents in the TreeSet built by solveQuery in Query object
-     * (copied here from Query.java, as it's package-private there!) 
-     *
-     * @version 1.0  06/04/2019
+     * displayAggregateResult method - displays in console the groups of an aggregate query, one line per group
      *
-     * @author Maria-Cruz Villa-Uriol (m.villa-uriol@sheffield.ac.uk)
+     * @param result The groups to be printed
+     * @return String the text to be displayed in the console
      */
-    private class PropertyComparator implements Comparator<WineSample>
-    {
-	WineProperty propertyToCompare;
-
-	public PropertyComparator(WineProperty wineProperty)
-	{
-	    propertyToCompare = wineProperty;
-	}
+    public String displayAggregateResult(AggregateResult result) {
+	// a line per group, as AggregateResult.toString gives them
+	return matchHeading(result.getTotalCount()) +"\n"+ result;
+    }
 
-	public int compare(WineSample a, WineSample b)
-	{
-	    double propA = a.getProperty(propertyToCompare);
-	    double propB = b.getProperty(propertyToCompare);
+    /**
+     * matchHeading method - the line heading a list of results
+     *
+     * @param n The number of matching samples
+     * @return String e.g. "3 wine samples match your query."
+     */
+    private String matchHeading(long n) {
+	return n +" wine sample"+ (n == 1 ? " matches" : "s match") +" your query.";
+    }
 
-	    if (propA > propB) return 1;
-	    if (propA < propB) return -1;
-	    return 0;
-	}
+    /**
+     * displayWineSample method - the line describing one wine sample in a list of results
+     *
+     * @param wine The sample to describe
+     * @return String the text to be displayed in the console
+     */
+    private String displayWineSample(WineSample wine) {
+	return "Sample #"+ wine.getId() +": "+
+	    wine.getType() +" wine, "+
+	    String.join(", ", new String[] {
+		"f_acid: "+ wine.getFixedAcidity(),
+		"v_acid: "+ wine.getVolatileAcidity(),
+		"c_acid: "+ wine.getCitricAcid(),
+		"r_sugar: "+ wine.getResidualSugar(),
+		"chlorid: "+ wine.getChlorides(),
+		"f_sulf: "+ wine.getFreeSulfurDioxide(),
+		"t_sulf: "+ wine.getTotalSulfurDioxide(),
+		"dens: "+ wine.getDensity(),
+		"pH: "+ wine.getpH(),
+		"sulph: "+ wine.getSulphates(),
+		"alc: "+ wine.getAlcohol(),
+		"qual: "+ wine.getQuality()
+	    });
     }
 
     /**
@@ -206,13 +204,8 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return collection of WineSample objects with the highest quality
      */
     public List<WineSample> bestQualityWine(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
-	// Obtain max value for Quality
-	double value = Collections.max(wineList, new PropertyComparator(WineProperty.Quality)).getQuality();
-	// Filter out wines that do not match that value, and return the remaining list
-	wineList.removeIf(x -> x.getQuality() != value);
-	return wineList;
+	// Obtain max value for Quality, then collect the wines that match it
+	return samplesMatching(wineType, WineProperty.Quality, maxValue(wineType, WineProperty.Quality));
     }
 
     /**
@@ -223,13 +216,8 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return collection of WineSample objects with the lowest quality
      */
     public List<WineSample> worstQualityWine(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
-	// Obtain min value for Quality
-	double value = Collections.min(wineList, new PropertyComparator(WineProperty.Quality)).getQuality();
-	// Filter out wines that do not match that value, and return the remaining list
-	wineList.removeIf(x -> x.getQuality() != value);
-	return wineList;
+	// Obtain min value for Quality, then collect the wines that match it
+	return samplesMatching(wineType, WineProperty.Quality, minValue(wineType, WineProperty.Quality));
     }
 
     /**
@@ -240,13 +228,8 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return collection of WineSample objects with the highest pH
      */
     public List<WineSample> highestPH(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
-	// Obtain max value for pH
-	double value = Collections.max(wineList, new PropertyComparator(WineProperty.PH)).getpH();
-	// Filter out wines that do not match that value, and return the remaining list
-	wineList.removeIf(x -> x.getpH() != value);
-	return wineList;
+	// Obtain max value for pH, then collect the wines that match it
+	return samplesMatching(wineType, WineProperty.PH, maxValue(wineType, WineProperty.PH));
     }
     
     /**
@@ -257,13 +240,8 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return collection of WineSample objects with the lowest pH
      */
     public List<WineSample> lowestPH(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
-	// Obtain min value for pH
-	double value = Collections.min(wineList, new PropertyComparator(WineProperty.PH)).getpH();
-	// Filter out wines that do not match that value, and return the remaining list
-	wineList.removeIf(x -> x.getpH() != value);
-	return wineList;
+	// Obtain min value for pH, then collect the wines that match it
+	return samplesMatching(wineType, WineProperty.PH, minValue(wineType, WineProperty.PH));
     }
 
     /**
@@ -274,10 +252,8 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return collection of WineSample objects with the highest alcohol content
      */
     public double highestAlcoholContent(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
 	// Obtain max value for Alcohol
-	return Collections.max(wineList, new PropertyComparator(WineProperty.Alcohol)).getAlcohol();
+	return maxValue(wineType, WineProperty.Alcohol);
     }
 
     /**
@@ -288,10 +264,8 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return collection of WineSample objects with the lowest citric acid content
      */
     public double lowestCitricAcid(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
 	// Obtain min value for CitricAcid
-	return Collections.min(wineList, new PropertyComparator(WineProperty.CitricAcid)).getCitricAcid();
+	return minValue(wineType, WineProperty.CitricAcid);
     }
 
     /**
@@ -302,13 +276,67 @@ public class WineSampleCellar extends AbstractWineSampleCellar {
      * @return average alcohol content of the list as a double
      */
     public double averageAlcoholContent(WineType wineType) {
-	// Fetch wine list by type
-	List<WineSample> wineList = new ArrayList<>(getWineSampleList(wineType));
-	// Obtain average value for Alcohol
-	double value = 0;
-	for (WineSample wine : wineList) {
-	    value += wine.getAlcohol(); // summing for now, will average below
+	// Obtain average value for Alcohol, starting from the running (row order) sum kept by the first rack
+	List<WineSampleRack> racks = getWineSampleRacks(wineType);
+	double value = racks.isEmpty() ? 0 : racks.get(0).getSum(WineProperty.Alcohol); // summing for now, will average below
+	// ...and carrying on down the rows of any others, so the sum is added up in the same order as over the whole list
+	for (WineSampleRack rack : racks.subList(Math.min(1, racks.size()), racks.size())) {
+	    WineColumn alcohol = rack.getColumn(WineProperty.Alcohol);
+	    for (int row = 0; row < rack.size(); row++) {
+		value += alcohol.get(row);
+	    }
+	}
+	return value / getWineSampleCount(wineType);
+    }
+
+    /**
+     * maxValue method - combines the running maximum of a property kept by every rack making up the wine type
+     *
+     * @param wineType Either RED, WHITE or ALL
+     * @param wineProperty The column to look at
+     * @return the highest value in the column
+     */
+    private double maxValue(WineType wineType, WineProperty wineProperty) {
+	double value = Double.NEGATIVE_INFINITY;
+	for (WineSampleRack rack : getWineSampleRacks(wineType)) {
+	    value = Math.max(value, rack.getMax(wineProperty));
+	}
+	return value;
+    }
+
+    /**
+     * minValue method - combines the running minimum of a property kept by every rack making up the wine type
+     *
+     * @param wineType Either RED, WHITE or ALL
+     * @param wineProperty The column to look at
+     * @return the lowest value in the column
+     */
+    private double minValue(WineType wineType, WineProperty wineProperty) {
+	double value = Double.POSITIVE_INFINITY;
+	for (WineSampleRack rack : getWineSampleRacks(wineType)) {
+	    value = Math.min(value, rack.getMin(wineProperty));
 	}
-	return value / wineList.size();
+	return value;
+    }
+
+    /**
+     * samplesMatching method - collects the wines whose property equals the given value
+     *
+     * @param wineType Either RED, WHITE or ALL
+     * @param wineProperty The column to scan
+     * @param value The value to look for
+     * @return List of matching WineSample views, in sample order
+     */
+    private List<WineSample> samplesMatching(WineType wineType, WineProperty wineProperty, double value) {
+	List<WineSample> wineList = new ArrayList<>();
+	for (WineSampleRack rack : getWineSampleRacks(wineType)) {
+	    IntPredicate matches = rack.getColumn(wineProperty).predicate(QueryOperator.EQUAL, value);
+	    for (int row = 0; row < rack.size(); row++) {
+		if (matches.test(row)) {
+		    wineList.add(rack.get(row));
+		}
+	    }
+	}
+	return wineList;
     }
 }
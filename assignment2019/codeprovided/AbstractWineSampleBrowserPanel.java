@@ -49,6 +49,9 @@ public abstract class AbstractWineSampleBrowserPanel extends JPanel {
     // buttonClearFilters will remove all query conditions in queryConditionList when clicked
     // clicking this button implies calling the method clearFilters(...)
     protected JButton buttonClearFilters = new JButton("Clear All Filters");
+    // buttonRemoveLastFilter will remove the query condition added last to queryConditionList when clicked
+    // clicking this button implies calling the method removeLastFilter(...)
+    protected JButton buttonRemoveLastFilter = new JButton("Remove Last Filter");
 
     // defining the combobox used to select the wine type to which the filters (queryConditionList or list of SubQuery object) need to be applied
     protected String[] wineTypes = { WineType.ALL.name(), WineType.RED.name(), WineType.WHITE.name() };
@@ -123,6 +126,7 @@ public abstract class AbstractWineSampleBrowserPanel extends JPanel {
         filterBuilderPanel.add(operatorValueLabel);
         filterBuilderPanel.add(value);
         filterBuilderPanel.add(buttonAddFilter);
+        filterBuilderPanel.add(buttonRemoveLastFilter);
         filterBuilderPanel.add(buttonClearFilters);
 
         queryPanel.add(typeSelectorPanel);
@@ -181,6 +185,7 @@ public abstract class AbstractWineSampleBrowserPanel extends JPanel {
      * addListeners method - adds relevant actionListeners to the GUI components
      * You will need to listen (at least) to the following:
      * - buttonAddFilter
+     * - buttonRemoveLastFilter
      * - buttonClearFilters
      * - comboWineTypes, if you want the samplesTextArea to be updated to show only the wine samples
      *            specified by this combobox
@@ -199,6 +204,12 @@ public abstract class AbstractWineSampleBrowserPanel extends JPanel {
      */
     public abstract void addFilter();
 
+    /**
+     * removeLastFilter method - removes the filter added last from the queryConditionsList ArrayList
+     * and updates the relevant GUI components when the button buttonRemoveLastFilter is clicked
+     */
+    public abstract void removeLastFilter();
+
     /**
      * clearFilters method - clears all filters from the queryConditionsList ArrayList and updates
      * the relevant GUI components when the button buttonClearFilters is clicked
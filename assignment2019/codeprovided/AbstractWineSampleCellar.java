@@ -23,7 +23,10 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -49,6 +52,26 @@ public abstract class AbstractWineSampleCellar {
 
 	protected Map<WineType, List<WineSample>> wineSampleRacks;
 
+	// parallelIngest makes readWineFile parse each file in chunks across all cores, and the
+	// constructor load the red and white files at the same time (see WineFileReader.readParallel)
+	private static volatile boolean parallelIngest = true;
+
+	// encodedColumns makes the cellar re-encode each rack's columns in compact fixed-point or
+	// dictionary form once it is loaded (see WineSampleRack.compact)
+	private static volatile boolean encodedColumns = true;
+
+	// snapshotFile, if set, is a binary copy of the racks (see WineCellarSnapshot) that the constructor
+	// reopens instead of parsing the CSV files, and rewrites whenever it had to parse them
+	private static volatile String snapshotFile;
+
+	// wineSampleSources keeps the file each stored rack was read from, to judge whether a snapshot is stale
+	protected Map<WineType, String> wineSampleSources = new EnumMap<>(WineType.class);
+	// wineSampleStamps keeps the size and modification time of each file when it was read, to judge whether
+	// a snapshot is stale, and how many bytes of it have been read, for tailWineList to carry on from
+	protected Map<WineType, SourceStamp> wineSampleStamps = new EnumMap<>(WineType.class);
+	// queryCache keeps the results of recent queries (see solveQuery), cleared whenever a rack is reloaded or extended
+	protected QueryCache queryCache = new QueryCache();
+
 	/**
 	 * constructor - reads wine sample datasets and list of queries from text file,
 	 * and initialises the wineSampleRacks Map
@@ -56,9 +79,37 @@ public abstract class AbstractWineSampleCellar {
     public AbstractWineSampleCellar(String redWineFilename, String whiteWineFilename, String queryFilename) {
 
         wineSampleRacks = new HashMap<>();
-        // editWineList will read the data and will insert the list of samples into the wineSampleRacks variable 
-        editWineList(WineType.RED, redWineFilename);
-        editWineList(WineType.WHITE, whiteWineFilename);
+        wineSampleSources.put(WineType.RED, redWineFilename);
+        wineSampleSources.put(WineType.WHITE, whiteWineFilename);
+        // a snapshot that is up to date with both files saves parsing them at all
+        if (!openSnapshot()) {
+            if (parallelIngest) {
+                // both files are read at the same time, and the racks handed over on this thread
+                WineSampleRack redWines = new WineSampleRack(WineType.RED);
+                WineSampleRack whiteWines = new WineSampleRack(WineType.WHITE);
+                SourceStamp redStamp = SourceStamp.of(redWineFilename);
+                SourceStamp whiteStamp = SourceStamp.of(whiteWineFilename);
+                ForkJoinTask<Long> whiteOffset = ForkJoinPool.commonPool().submit(() -> readWineFile(whiteWineFilename, whiteWines, whiteStamp.getSize()));
+                wineSampleStamps.put(WineType.RED, redStamp.withOffset(readWineFile(redWineFilename, redWines, redStamp.getSize())));
+                wineSampleStamps.put(WineType.WHITE, whiteStamp.withOffset(WineFileReader.join(whiteOffset)));
+                wineSampleRacks.put(WineType.RED, redWines);
+                wineSampleRacks.put(WineType.WHITE, whiteWines);
+                prepareRack(getWineSampleRack(WineType.RED));
+                prepareRack(getWineSampleRack(WineType.WHITE));
+            }
+            else {
+                // editWineList will read the data and will insert the list of samples into the wineSampleRacks variable 
+                editWineList(WineType.RED, redWineFilename);
+                editWineList(WineType.WHITE, whiteWineFilename);
+            }
+            if (snapshotFile != null) {
+                try {
+                    saveSnapshot(snapshotFile);
+                } catch (IOException e) {
+                    System.out.println("The cellar snapshot " + snapshotFile + " could not be saved.");
+                }
+            }
+        }
 
         // updateCellar will update wineSampleRacks to contain 'also' an additional list containing all wine samples (in this case red and white)
         updateCellar();
@@ -68,51 +119,42 @@ public abstract class AbstractWineSampleCellar {
      * readWineFile method - reads the two CSV files and the type passed by the main. It then reads the contents of the files
      * and creates the relevant wine sample objects and returns them into a list. Catches exception errors
      * should they occur.
+     * The file is memory-mapped and parsed in place by WineFileReader, straight into a WineSampleRack,
+     * in parallel chunks when parallel ingest is enabled. A gzip-compressed file (e.g. a .csv.gz export)
+     * is recognised by its contents and decompressed on the fly instead, overlapping with the parsing.
      *
      * @param wineFile This is either the redWineFile or whiteWineFile depending on which list called the method
      * @param wineType This is a WineType enum containing either red or white depending on which list called the method
      * @return List of WineSample objects
      */
     public static List<WineSample> readWineFile(String wineFile,  WineType wineType) throws IllegalArgumentException {
-        List<WineSample> wineList = new ArrayList<>();
-        String split = ";";
-        int count = 1;
+        WineSampleRack rack = new WineSampleRack(wineType);
+        readWineFile(wineFile, rack, Long.MAX_VALUE);
+        return rack;
+    }
+
+    /**
+     * readWineFile method - as above, but reads into an empty <code>rack</code> only the lines among
+     * the first <code>limit</code> bytes of the file that are finished, so that lines appended or still
+     * being written while it is read are left for tailWineList
+     *
+     * @param wineFile This is either the redWineFile or whiteWineFile depending on which list called the method
+     * @param rack the empty rack to fill
+     * @param limit number of bytes to read at most, or Long.MAX_VALUE for the whole file
+     * @return offset just past the last line read, for tailWineList to carry on from (0 if the file could not be read)
+     */
+    protected static long readWineFile(String wineFile, WineSampleRack rack, long limit) throws IllegalArgumentException {
         wineFile = wineFile.replaceAll(" ", "%20");
 
-        try (BufferedReader br = new BufferedReader(new FileReader(wineFile))) {
-            String line = br.readLine();
-            if (line == null) {
-                throw new IllegalArgumentException("File is empty. Please, provide a valid dataset.");
-            }
-            while ((line = br.readLine()) != null) {
-                String[] wineLine = line.toLowerCase().split(split);
-                if (wineLine.length != 12) {
-                    throw new IllegalArgumentException("Inadequate file format. Please, provide a valid dataset.");
-                }
-                try {
-                    double fixedAcidity = Double.parseDouble(wineLine[0]);
-                    double volatileAcidity = Double.parseDouble((wineLine[1]));
-                    double citricAcid = Double.parseDouble(wineLine[2]);
-                    double residualSugar = Double.parseDouble((wineLine[3]));
-                    double chlorides = Double.parseDouble(wineLine[4]);
-                    double freeSulfurDioxide = Double.parseDouble((wineLine[5]));
-                    double totalSulfurDioxide = Double.parseDouble(wineLine[6]);
-                    double density = Double.parseDouble((wineLine[7]));
-                    double pH = Double.parseDouble(wineLine[8]);
-                    double sulphates = Double.parseDouble((wineLine[9]));
-                    double alcohol = Double.parseDouble(wineLine[10]);
-                    double quality = Double.parseDouble((wineLine[11]));
-                    // the wine sample ID is created by this reader, it is not provided in the original files
-                    int id = count;		
-                    WineSample wine = new WineSample(id, wineType, fixedAcidity, volatileAcidity, citricAcid, residualSugar, chlorides, freeSulfurDioxide, totalSulfurDioxide, density, pH, sulphates, alcohol, quality);
-                    wineList.add(wine);
-                    count++;
-                } catch (NumberFormatException e) {
-                    System.out.println("File format is incorrect - only double values are allowed. Please, revise.");
-                }
+        try {
+            if (WineFileReader.isCompressed(wineFile)) {
+                // compressed files are streamed whole, as they cannot be mapped or cut off at a byte offset
+                WineFileReader.readCompressed(wineFile, rack, parallelIngest);
+                return limit;
             }
+            return parallelIngest ? WineFileReader.readParallel(wineFile, rack, limit) : WineFileReader.read(wineFile, rack, limit);
 
-        } catch (FileNotFoundException e) {
+        } catch (NoSuchFileException e) {
             System.out.println(wineFile + " could not be found. Please, provide a correct filename.");
 
         } catch (IOException e) {
@@ -121,7 +163,46 @@ public abstract class AbstractWineSampleCellar {
             // e.printStackTrace();
         }
 
-        return wineList;
+        return 0;
+    }
+
+    /**
+     * setParallelIngest method - switches between parallel (the default) and single-threaded
+     * reading of the wine sample datasets
+     *
+     * @param parallel true to parse files in chunks across all cores and load both files at once
+     */
+    public static void setParallelIngest(boolean parallel) {
+        parallelIngest = parallel;
+    }
+
+    /**
+     * isParallelIngest method - whether wine sample datasets are read in parallel
+     *
+     * @return true if parallel ingest is enabled
+     */
+    public static boolean isParallelIngest() {
+        return parallelIngest;
+    }
+
+    /**
+     * setEncodedColumns method - switches between encoded (the default) and plain double columns
+     * for the racks of cellars created from now on
+     *
+     * @param encoded true to store columns in compact fixed-point or dictionary form where exact
+     */
+    public static void setEncodedColumns(boolean encoded) {
+        encodedColumns = encoded;
+    }
+
+    /**
+     * setOffHeapRacks method - keeps the racks of cellars created from now on in direct buffers
+     * outside the Java heap (see WineSampleRack.setOffHeap). Off-heap racks are not re-encoded.
+     *
+     * @param offHeap true to store rack data off-heap, false for heap arrays (the default)
+     */
+    public static void setOffHeapRacks(boolean offHeap) {
+        WineSampleRack.setOffHeap(offHeap);
     }
 
     /**
@@ -166,7 +247,191 @@ public abstract class AbstractWineSampleCellar {
      * @param filename the name of the .csv to read
      */
     public void editWineList(WineType wineType, String filename){
-        wineSampleRacks.put(wineType, new ArrayList<>(readWineFile(filename, wineType)));
+        WineSampleRack rack = new WineSampleRack(wineType);
+        // stamped before reading, so that a change made while it is read makes a snapshot of it stale
+        SourceStamp stamp = SourceStamp.of(filename);
+        long offset = readWineFile(filename, rack, stamp.getSize());
+        wineSampleRacks.put(wineType, rack);
+        prepareRack(rack);
+        queryCache.clear();
+        wineSampleSources.put(wineType, filename);
+        wineSampleStamps.put(wineType, stamp.withOffset(offset));
+    }
+
+    /**
+     * appendWineSamples method - adds copies of <code>samples</code> to the end of a stored rack,
+     * numbering them on from the highest id already in it, and adds them to the ALL list as well
+     *
+     * @param wineType Either RED or WHITE
+     * @param samples the samples to add
+     */
+    public void appendWineSamples(WineType wineType, List<WineSample> samples) {
+        WineSampleRack rack = getWineSampleRack(wineType);
+        int from = rack.size();
+        int id = rack.getMaxId();
+        double[] values = new double[WineSampleRack.NUMBER_OF_PROPERTIES];
+        for (WineSample sample : samples) {
+            sample.getProperties(values);
+            rack.addSample(++id, values);
+        }
+        rowsAppended(wineType, from);
+    }
+
+    /**
+     * tailWineList method - reads only the lines added to the file of a stored rack since it was last read,
+     * appending them (numbered on from the highest id in the rack) to the rack and the ALL list.
+     * If the file has shrunk it has been rewritten, so the rack is read again from scratch instead
+     * (as is a compressed file that has changed at all). A last line without its newline is left
+     * for a later call, as it may still be being written.
+     *
+     * @param wineType Either RED or WHITE
+     * @return number of samples added (after reading the file again, how many more samples the rack
+     *         holds than before, or 0 if it holds fewer)
+     */
+    public int tailWineList(WineType wineType) {
+        String filename = wineSampleSources.get(wineType);
+        WineSampleRack rack = getWineSampleRack(wineType);
+        int from = rack.size();
+        // new lines go into a rack of their own first, so a bad line cannot leave half of them behind
+        WineSampleRack newWines = new WineSampleRack(wineType);
+        try {
+            SourceStamp last = wineSampleStamps.get(wineType);
+            long previous = last != null ? last.getOffset() : 0;
+            SourceStamp stamp = SourceStamp.of(filename);
+            long offset;
+            if (WineFileReader.isCompressed(filename)) {
+                // a compressed file cannot be read on from the middle, so any change means reading it again;
+                // one rewritten to the same size still has a new modification time
+                offset = last != null && stamp.getSize() == previous && stamp.getModified() == last.getModified() ? previous : -1;
+            }
+            else {
+                offset = WineFileReader.readTail(filename, newWines, previous, rack.getMaxId() + 1);
+            }
+            if (offset < 0) {
+                editWineList(wineType, filename);
+                updateCellar();
+                return Math.max(getWineSampleCount(wineType) - from, 0);
+            }
+            rack.addRack(newWines, 0);
+            wineSampleStamps.put(wineType, stamp.withOffset(offset));
+
+        } catch (NoSuchFileException e) {
+            System.out.println(filename + " could not be found. Please, provide a correct filename.");
+
+        } catch (IOException e) {
+            System.out.println("For unknown reasons the file could not be handled. Please, revise if you are providing the correct datasets and using the appropriate file formats.");
+        }
+        rowsAppended(wineType, from);
+        return rack.size() - from;
+    }
+
+    // Adds rows appended to a stored rack from row <code>from</code> on to the ALL list, keeping red samples ahead of white ones
+    // (only needed if ALL has been materialised; a WineSampleRackView sees the new rows by itself),
+    // and re-encodes any columns the new rows widened once enough of them have arrived (see WineSampleRack.recompact)
+    private void rowsAppended(WineType wineType, int from) {
+        List<WineSample> allWines = wineSampleRacks.get(WineType.ALL);
+        WineSampleRack rack = getWineSampleRack(wineType);
+        if (from < rack.size()) {
+            queryCache.clear();
+            if (encodedColumns) {
+                rack.recompact();
+            }
+        }
+        if (allWines != null && !(allWines instanceof WineSampleRackView) && from < rack.size()) {
+            int index = wineType == WineType.RED ? from : allWines.size();
+            allWines.addAll(index, rack.subList(from, rack.size()));
+        }
+    }
+
+    // Readies a freshly loaded rack for querying: encodes its columns (if enabled). Histograms are left
+    // for the planner to build the first time it needs each one (see WineSampleRack.getHistogram)
+    private static void prepareRack(WineSampleRack rack) {
+        if (encodedColumns) {
+            rack.compact();
+        }
+    }
+
+    /**
+     * setSnapshotFile method - sets the binary snapshot that new cellars reopen when it is
+     * up to date with their CSV files, and (re)write after parsing them when it is not
+     *
+     * @param filename path of the snapshot, or null to always parse the CSV files
+     */
+    public static void setSnapshotFile(String filename) {
+        snapshotFile = filename;
+    }
+
+    /**
+     * saveSnapshot method - writes the RED and WHITE racks to a binary snapshot file,
+     * along with the size and modification time the CSV file each was read from had when it was read
+     *
+     * @param filename path of the snapshot to (over)write
+     * @throws IOException if the snapshot cannot be written or a source file no longer exists
+     */
+    public void saveSnapshot(String filename) throws IOException {
+        Map<WineType, WineSampleRack> racks = new EnumMap<>(WineType.class);
+        for (WineType wineType : wineSampleSources.keySet()) {
+            racks.put(wineType, getWineSampleRack(wineType));
+        }
+        WineCellarSnapshot.save(filename, racks, wineSampleSources, wineSampleStamps);
+    }
+
+    // Puts the racks held in snapshotFile into wineSampleRacks, if it is set and up to date
+    private boolean openSnapshot() {
+        if (snapshotFile == null) {
+            return false;
+        }
+        try {
+            Map<WineType, WineSampleRack> racks = WineCellarSnapshot.open(snapshotFile, wineSampleSources, wineSampleStamps);
+            if (racks == null) {
+                return false;
+            }
+            // the racks come back with their statistics and histograms, and in the encoding they were saved in:
+            // compacting them again does nothing unless they were saved before being compacted
+            wineSampleRacks.putAll(racks);
+            racks.values().forEach(AbstractWineSampleCellar::prepareRack);
+            return true;
+        } catch (IOException e) {
+            System.out.println("The cellar snapshot " + snapshotFile + " could not be read, reading the datasets instead.");
+            return false;
+        }
+    }
+
+    /**
+     * getWineSampleRack method - returns the columnar rack holding the samples of a single
+     * stored Wine Type (RED or WHITE)
+     *
+     * @param wineType Either RED or WHITE
+     * @return WineSampleRack for <code>wineType</code>
+     */
+    public WineSampleRack getWineSampleRack(WineType wineType) {
+        List<WineSample> list = wineSampleRacks.get(wineType);
+        if (list instanceof WineSampleRack) {
+            return (WineSampleRack) list;
+        }
+        // racks put in by hand are converted once, so that column scans always have a rack to work on
+        WineSampleRack rack = new WineSampleRack(wineType, list.size());
+        rack.addAll(list);
+        wineSampleRacks.put(wineType, rack);
+        return rack;
+    }
+
+    /**
+     * getWineSampleRacks method - returns the racks making up a Wine Type, i.e. a single rack
+     * for RED or WHITE, and both of them (red first) for ALL
+     *
+     * @param wineType Either RED, WHITE or ALL
+     * @return List of WineSampleRack partitions, in sample order
+     */
+    public List<WineSampleRack> getWineSampleRacks(WineType wineType) {
+        List<WineSample> list = wineSampleRacks.get(wineType);
+        if (list instanceof WineSampleRackView) {
+            return ((WineSampleRackView) list).getWineSampleRacks();
+        }
+        if (wineType == WineType.ALL) {
+            return Arrays.asList(getWineSampleRack(WineType.RED), getWineSampleRack(WineType.WHITE));
+        }
+        return Collections.singletonList(getWineSampleRack(wineType));
     }
     
     /**
@@ -190,6 +455,87 @@ public abstract class AbstractWineSampleCellar {
         List<WineSample> list = getWineSampleList(wineType);
         return list.size(); // list should never be null
     }
+
+    /**
+     * solveQuery method - solves a query (see Query.solveQuery) through the cellar's QueryCache, so that
+     * asking the same query again, in whatever form, costs a lookup. The results are read-only.
+     *
+     * @param query the query to solve
+     * @return List of the matching wine samples, sorted as by Query.solveQuery
+     */
+    public List<WineSample> solveQuery(Query query) {
+        if (query.isAggregate()) {
+            return query.solveQuery(); // the cache only holds lists of samples
+        }
+        List<WineSample> wineList = query.getWineList();
+        List<WineSample> results = queryCache.get(query);
+        if (results == null) {
+            results = query.solveQuery();
+            queryCache.put(query, wineList, results);
+        }
+        query.setWineList(results);
+        return results;
+    }
+
+    /**
+     * solveQueries method - solves a list of queries (e.g. a whole query file) together: those in the
+     * QueryCache are looked up, and the rest solved as one QueryBatch, sharing a scan of each rack
+     * between them, and cached in turn
+     *
+     * @param queries the queries to solve
+     * @return List of each query's results, in the order of <code>queries</code>, sorted as by Query.solveQuery
+     */
+    public List<List<WineSample>> solveQueries(List<Query> queries) {
+        List<List<WineSample>> results = new ArrayList<>();
+        List<Query> unsolved = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (Query query : queries) {
+            List<WineSample> cached = query.isAggregate() ? null : queryCache.get(query);
+            if (cached == null) {
+                unsolved.add(query);
+                positions.add(results.size());
+            }
+            results.add(cached);
+        }
+        // the lists queried, kept before solving replaces them with the results
+        List<List<WineSample>> wineLists = new ArrayList<>();
+        for (Query query : unsolved) {
+            wineLists.add(query.getWineList());
+        }
+        List<List<WineSample>> solved = QueryBatch.solve(unsolved);
+        for (int q = 0; q < unsolved.size(); q++) {
+            Query query = unsolved.get(q);
+            if (!query.isAggregate()) {
+                queryCache.put(query, wineLists.get(q), solved.get(q));
+            }
+            results.set(positions.get(q), solved.get(q));
+        }
+        for (int q = 0; q < queries.size(); q++) {
+            queries.get(q).setWineList(results.get(q));
+        }
+        return results;
+    }
+
+    /**
+     * Getter for the cache of query results, e.g. for its hit rate
+     *
+     * @return QueryCache of the cellar
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * getWineSampleCount method - returns how many wine samples of the given type meet every condition,
+     * counted from the racks' bitmap indexes rather than by listing the samples
+     *
+     * @param wineType Either RED, WHITE or ALL
+     * @param conditions the conditions a sample must meet
+     * @return number of matching wines of type <code>wineType</code>
+     */
+    public int getWineSampleCount(WineType wineType, List<QueryCondition> conditions) {
+        return QueryEngine.count(getWineSampleList(wineType), conditions);
+    }
     
     // list of abstract methods starts
     
@@ -0,0 +1,81 @@
+package assignment2019.codeprovided;
+
+/**
+ * Aggregate.java
+ *
+ * One value an aggregate query computes per group of matching samples (see Query.setGroupBy),
+ * written <code>count</code>, <code>sum(PROPERTY)</code>, <code>avg(PROPERTY)</code>,
+ * <code>min(PROPERTY)</code> or <code>max(PROPERTY)</code> after <code>compute</code> in the query
+ * language, e.g. <code>select red where alc > 11 group by qual compute count, avg(alc), min(ph)</code>.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class Aggregate {
+
+    public enum Function {
+        COUNT("count"),
+        SUM("sum"),
+        AVG("avg"),
+        MIN("min"),
+        MAX("max");
+
+        private String name;
+
+        Function(String name) { this.name = name; }
+
+        public String getName() { return this.name; }
+
+        /**
+         * fromName method - the function written as <code>name</code> in queries
+         *
+         * @param name one of count, sum, avg, min, max
+         * @return the function, or null if the name is not one of them
+         */
+        public static Function fromName(String name) {
+            for (Function function : values()) {
+                if (function.name.equals(name)) {
+                    return function;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Instance variables: the property is null for COUNT, which needs none
+    private final Function function;
+    private final WineProperty wineProperty;
+
+    // Constructor
+    public Aggregate(Function function, WineProperty wineProperty) {
+        if ((function == Function.COUNT) != (wineProperty == null)) {
+            throw new IllegalArgumentException(function == Function.COUNT
+                ? "count takes no property" : function.getName() + " needs a property");
+        }
+        this.function = function;
+        this.wineProperty = wineProperty;
+    }
+
+    /**
+     * count method - the number of samples in each group
+     *
+     * @return Aggregate for <code>count</code>
+     */
+    public static Aggregate count() {
+        return new Aggregate(Function.COUNT, null);
+    }
+
+    // Getters
+    public Function getFunction() { return function; }
+    public WineProperty getWineProperty() { return wineProperty; }
+
+    /**
+     * toString method - the aggregate as written in a query, with the property's full name
+     *
+     * @return String e.g. <code>avg(Alcohol)</code>
+     */
+    public String toString() {
+        return wineProperty == null ? function.getName() : function.getName() + "(" + wineProperty.getName() + ")";
+    }
+}
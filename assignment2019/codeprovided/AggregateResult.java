@@ -0,0 +1,117 @@
+package assignment2019.codeprovided;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AggregateResult.java
+ *
+ * The answer to an aggregate query (see Query.aggregateQuery): one row per group of matching
+ * samples, in ascending order of the grouped property's value (NaN last), holding the group's
+ * value, its count and each aggregate asked for, in the order asked. A query without
+ * <code>group by</code> has a single group, present even if nothing matched; its value is NaN.
+ * Over an empty group, min and max are positive and negative infinity and avg is NaN.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class AggregateResult {
+
+    // Instance variables: one entry per group
+    private final WineProperty groupBy;
+    private final List<Aggregate> aggregates;
+    private final double[] keys;
+    private final long[] counts;
+    private final double[][] values;
+
+    // Constructor (results are made by QueryEngine.aggregate)
+    AggregateResult(WineProperty groupBy, List<Aggregate> aggregates, double[] keys, long[] counts, double[][] values) {
+        this.groupBy = groupBy;
+        this.aggregates = Collections.unmodifiableList(aggregates);
+        this.keys = keys;
+        this.counts = counts;
+        this.values = values;
+    }
+
+    // Getters
+    public WineProperty getGroupBy() { return groupBy; }
+    public List<Aggregate> getAggregates() { return aggregates; }
+    public int getGroupCount() { return keys.length; }
+
+    /**
+     * getTotalCount method - the number of matching samples, over every group
+     *
+     * @return number of samples
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Getter for the value of the grouped property shared by a group's samples
+     *
+     * @param group the group, from 0
+     * @return value of the group's samples, or NaN without <code>group by</code>
+     */
+    public double getGroupKey(int group) {
+        return keys[group];
+    }
+
+    /**
+     * Getter for the number of matching samples in a group
+     *
+     * @param group the group, from 0
+     * @return number of samples
+     */
+    public long getCount(int group) {
+        return counts[group];
+    }
+
+    /**
+     * Getter for one aggregate of a group
+     *
+     * @param group the group, from 0
+     * @param aggregate index of the aggregate in getAggregates()
+     * @return value of the aggregate over the group's samples
+     */
+    public double getValue(int group, int aggregate) {
+        return values[group][aggregate];
+    }
+
+    /**
+     * toString method - a line per group, e.g. <code>Quality 5.0: count: 17, avg(Alcohol): 11.3</code>,
+     * or <code>All: ...</code> for the single group of a query without <code>group by</code>.
+     * This is how the cellar prints an aggregate query's results (see WineSampleCellar.displayAggregateResult).
+     *
+     * @return String of the groups
+     */
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int g = 0; g < keys.length; g++) {
+            if (g > 0) {
+                text.append('\n');
+            }
+            if (groupBy != null) {
+                text.append(groupBy.getName()).append(' ').append(keys[g]).append(": ");
+            }
+            else {
+                text.append("All: ");
+            }
+            for (int a = 0; a < aggregates.size(); a++) {
+                text.append(a == 0 ? "" : ", ").append(aggregates.get(a)).append(": ");
+                if (aggregates.get(a).getFunction() == Aggregate.Function.COUNT) {
+                    text.append(counts[g]);
+                }
+                else {
+                    text.append(values[g][a]);
+                }
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,212 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * BitmapIndex.java
+ *
+ * Bitmap index over one property column of a WineSampleRack: the rows are split into bins by
+ * value, each with a RowBitmap of its rows. A column with at most MAX_EXACT_BINS distinct values
+ * (quality, and most of the others in the CSV files) gets one bin per value; any other column
+ * gets about BINS bins of similar size, never splitting rows of equal value. A condition is the
+ * OR of the bins it covers whole, plus the rows of at most two part-covered bins that pass the
+ * condition; conditions then combine by bitmap AND, 64 rows at a time.
+ * Rows appended to the rack are added to the bins by extend, widening a bin where a new value
+ * falls outside it, until the rack has doubled in size and the bins are laid out afresh.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class BitmapIndex {
+
+    static final int MAX_EXACT_BINS = 256;
+    private static final int BINS = 64;
+
+    // Instance variables: lowest and highest value in each bin, in ascending order, and the bin's rows
+    private final double[] lows;
+    private final double[] highs;
+    private final RowBitmap[] bins;
+    private final int size;
+    private final WineColumn column;
+
+    // Constructor
+    public BitmapIndex(WineColumn column, PropertyIndex index) {
+        this.column = column;
+        this.size = index.size();
+        // count the values (NaN never falls in a bin), to decide between a bin per value and even-sized bins
+        int valueCount = 0, distinct = 0;
+        while (valueCount < size && !Double.isNaN(index.getValue(valueCount))) {
+            if (valueCount == 0 || index.getValue(valueCount) != index.getValue(valueCount - 1)) {
+                distinct++;
+            }
+            valueCount++;
+        }
+        boolean exact = distinct <= MAX_EXACT_BINS;
+        int target = exact ? 1 : (valueCount + BINS - 1) / BINS;
+        double[] lows = new double[exact ? distinct : BINS];
+        double[] highs = new double[lows.length];
+        RowBitmap[] bins = new RowBitmap[lows.length];
+        int binCount = 0;
+        for (int from = 0; from < valueCount; ) {
+            int to = Math.min(from + target, valueCount);
+            while (to < valueCount && index.getValue(to) == index.getValue(to - 1)) {
+                to++;
+            }
+            RowBitmap.Builder builder = new RowBitmap.Builder();
+            for (int row : index.copyRows(from, to)) {
+                builder.add(row);
+            }
+            lows[binCount] = index.getValue(from);
+            highs[binCount] = index.getValue(to - 1);
+            bins[binCount++] = builder.build();
+            from = to;
+        }
+        this.lows = Arrays.copyOf(lows, binCount);
+        this.highs = Arrays.copyOf(highs, binCount);
+        this.bins = Arrays.copyOf(bins, binCount);
+    }
+
+    // Constructor for an index whose bins are laid out already (see extend)
+    private BitmapIndex(double[] lows, double[] highs, RowBitmap[] bins, int size, WineColumn column) {
+        this.lows = lows;
+        this.highs = highs;
+        this.bins = bins;
+        this.size = size;
+        this.column = column;
+    }
+
+    /**
+     * extend method - the index of the rack once rows [size(), size) have been appended to it:
+     * each new row joins the bin whose value range it falls in, or the nearest one, which is
+     * widened to take it. Returns null, for the index to be built afresh, if the rows would
+     * more than double or there are no bins to add to, as widened bins select less exactly.
+     *
+     * @param column the property column now, which may have been re-encoded since
+     * @param size number of rows in the rack now, at least size()
+     * @return BitmapIndex over rows [0, size), or null if it should be rebuilt
+     */
+    public BitmapIndex extend(WineColumn column, int size) {
+        if (bins.length == 0 || size - this.size > this.size) {
+            return null;
+        }
+        double[] lows = this.lows.clone();
+        double[] highs = this.highs.clone();
+        RowBitmap.Builder[] added = new RowBitmap.Builder[bins.length];
+        for (int row = this.size; row < size; row++) {
+            double value = column.get(row);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int b = bin(value);
+            lows[b] = Math.min(lows[b], value);
+            highs[b] = Math.max(highs[b], value);
+            if (added[b] == null) {
+                added[b] = new RowBitmap.Builder();
+            }
+            added[b].add(row);
+        }
+        RowBitmap[] bins = this.bins.clone();
+        for (int b = 0; b < bins.length; b++) {
+            if (added[b] != null) {
+                bins[b] = bins[b].or(added[b].build());
+            }
+        }
+        return new BitmapIndex(lows, highs, bins, size, column);
+    }
+
+    /**
+     * Getter for the number of rows indexed
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the number of bins
+     *
+     * @return number of bins
+     */
+    public int getBinCount() {
+        return bins.length;
+    }
+
+    /**
+     * rows method - the rows matching <code>property operator value</code>
+     *
+     * @param operator the comparison, or null (for an unrecognised operator) to match nothing
+     * @param value the value to compare with
+     * @return RowBitmap of the matching rows
+     */
+    public RowBitmap rows(QueryOperator operator, double value) {
+        if (operator == null) {
+            return RowBitmap.EMPTY;
+        }
+        if (operator == QueryOperator.NOT_EQUAL) {
+            return rows(QueryOperator.EQUAL, value).not(size);
+        }
+        if (Double.isNaN(value)) {
+            return RowBitmap.EMPTY;
+        }
+        switch (operator) {
+            case GREATER: return rows(value, false, Double.POSITIVE_INFINITY, true);
+            case GREATER_OR_EQUAL: return rows(value, true, Double.POSITIVE_INFINITY, true);
+            case LESS: return rows(Double.NEGATIVE_INFINITY, true, value, false);
+            case LESS_OR_EQUAL: return rows(Double.NEGATIVE_INFINITY, true, value, true);
+            default: return rows(value, true, value, true);
+        }
+    }
+
+    /**
+     * rows method - the rows whose value lies in an interval
+     *
+     * @param low lower bound (may be negative infinity)
+     * @param lowInclusive whether a value equal to <code>low</code> is in the interval
+     * @param high upper bound (may be positive infinity)
+     * @param highInclusive whether a value equal to <code>high</code> is in the interval
+     * @return RowBitmap of the matching rows
+     */
+    public RowBitmap rows(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        RowBitmap result = RowBitmap.EMPTY;
+        IntPredicate test = null;
+        for (int b = 0; b < bins.length; b++) {
+            boolean aboveLow = lowInclusive ? lows[b] >= low : lows[b] > low;
+            boolean belowHigh = highInclusive ? highs[b] <= high : highs[b] < high;
+            boolean overlaps = (highInclusive ? lows[b] <= high : lows[b] < high) && (lowInclusive ? highs[b] >= low : highs[b] > low);
+            if (aboveLow && belowHigh) {
+                result = result.or(bins[b]);
+            }
+            else if (overlaps) {
+                // a part-covered bin: only its rows that lie in the interval
+                if (test == null) {
+                    test = column.intervalPredicate(low, lowInclusive, high, highInclusive);
+                }
+                RowBitmap.Builder builder = new RowBitmap.Builder();
+                IntPredicate rowTest = test;
+                bins[b].forEach(row -> {
+                    if (rowTest.test(row)) builder.add(row);
+                });
+                result = result.or(builder.build());
+            }
+        }
+        return result;
+    }
+
+    // The last bin whose lowest value is at most value, or the first bin if there is none
+    private int bin(double value) {
+        int low = 0, high = bins.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lows[mid] <= value) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
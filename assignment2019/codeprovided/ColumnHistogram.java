@@ -0,0 +1,240 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+
+/**
+ * ColumnHistogram.java
+ *
+ * Distribution of the values of one property column of a WineSampleRack, for the QueryPlanner to
+ * estimate how many rows a condition keeps. A column with at most MAX_EXACT_VALUES distinct
+ * values (quality, and most of the others in the CSV files) gets an exact count per value; any
+ * other column gets BUCKETS equal-width buckets between its lowest and highest value, with rows
+ * assumed to be spread evenly within a bucket. NaN values are counted but match no interval.
+ * It is built by reading the column a row at a time, without copying it, and rows appended to
+ * the rack are counted into it by extend.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class ColumnHistogram {
+
+    static final int MAX_EXACT_VALUES = 256;
+    private static final int BUCKETS = 64;
+
+    // Instance variables: for an exact histogram, the distinct values in ascending order and their
+    // counts; otherwise bucket counts between min and max (values is then null)
+    private final int size;
+    private final double[] values;
+    private final int[] counts;
+    private final double min;
+    private final double max;
+
+    // Constructor for a histogram saved before (see WineCellarSnapshot)
+    ColumnHistogram(int size, double[] values, int[] counts, double min, double max) {
+        this.size = size;
+        this.values = values;
+        this.counts = counts;
+        this.min = min;
+        this.max = max;
+    }
+
+    // Constructor
+    public ColumnHistogram(WineColumn column, int size) {
+        this.size = size;
+        double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < size; row++) {
+            double value = column.get(row);
+            if (value < low) low = value;
+            if (value > high) high = value;
+        }
+        min = low;
+        max = high;
+        // try a count per distinct value first, giving up once there are too many of them
+        double[] distinct = new double[MAX_EXACT_VALUES];
+        int[] distinctCounts = new int[MAX_EXACT_VALUES];
+        int distinctCount = 0;
+        boolean exact = true;
+        for (int row = 0; row < size && exact; row++) {
+            double value = column.get(row);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int at = Arrays.binarySearch(distinct, 0, distinctCount, value);
+            if (at >= 0) {
+                distinctCounts[at]++;
+            }
+            else if (distinctCount == MAX_EXACT_VALUES) {
+                exact = false;
+            }
+            else {
+                at = -at - 1;
+                System.arraycopy(distinct, at, distinct, at + 1, distinctCount - at);
+                System.arraycopy(distinctCounts, at, distinctCounts, at + 1, distinctCount - at);
+                distinct[at] = value;
+                distinctCounts[at] = 1;
+                distinctCount++;
+            }
+        }
+        if (exact) {
+            values = Arrays.copyOf(distinct, distinctCount);
+            counts = Arrays.copyOf(distinctCounts, distinctCount);
+            return;
+        }
+        values = null;
+        counts = new int[BUCKETS];
+        for (int row = 0; row < size; row++) {
+            double value = column.get(row);
+            if (!Double.isNaN(value)) {
+                counts[bucket(value)]++;
+            }
+        }
+    }
+
+    /**
+     * extend method - the histogram of the rack once rows [size(), size) have been appended to it,
+     * counting just the new rows. Returns null, for the histogram to be built afresh, if a new
+     * value does not fit: one too many for exact counts, or one outside the buckets' span.
+     *
+     * @param column the property column now, which may have been re-encoded since
+     * @param size number of rows in the rack now, at least size()
+     * @return ColumnHistogram of rows [0, size), or null if it should be rebuilt
+     */
+    public ColumnHistogram extend(WineColumn column, int size) {
+        double[] values = this.values;
+        int[] counts = this.counts.clone();
+        double low = min, high = max;
+        for (int row = this.size; row < size; row++) {
+            double value = column.get(row);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (values == null) {
+                if (value < min || value > max) {
+                    return null;
+                }
+                counts[bucket(value)]++;
+                continue;
+            }
+            int at = Arrays.binarySearch(values, value);
+            if (at >= 0) {
+                counts[at]++;
+            }
+            else if (values.length == MAX_EXACT_VALUES) {
+                return null;
+            }
+            else {
+                at = -at - 1;
+                double[] grown = new double[values.length + 1];
+                int[] grownCounts = new int[values.length + 1];
+                System.arraycopy(values, 0, grown, 0, at);
+                System.arraycopy(counts, 0, grownCounts, 0, at);
+                System.arraycopy(values, at, grown, at + 1, values.length - at);
+                System.arraycopy(counts, at, grownCounts, at + 1, values.length - at);
+                grown[at] = value;
+                grownCounts[at] = 1;
+                values = grown;
+                counts = grownCounts;
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+        }
+        return new ColumnHistogram(size, values, counts, low, high);
+    }
+
+    /**
+     * Getter for the number of rows counted
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    // What the histogram holds, for WineCellarSnapshot: values is null unless it is exact
+    double[] getValues() { return values; }
+    int[] getCounts() { return counts; }
+    double getMin() { return min; }
+    double getMax() { return max; }
+
+    /**
+     * isExact method - whether the histogram holds a count per distinct value
+     *
+     * @return true if estimates are exact
+     */
+    public boolean isExact() {
+        return values != null;
+    }
+
+    /**
+     * fraction method - estimated share of the rows whose value lies in an interval
+     *
+     * @param low lower bound (may be negative infinity)
+     * @param lowInclusive whether a value equal to <code>low</code> is in the interval
+     * @param high upper bound (may be positive infinity)
+     * @param highInclusive whether a value equal to <code>high</code> is in the interval
+     * @return fraction between 0 and 1
+     */
+    public double fraction(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        if (size == 0) {
+            return 0;
+        }
+        double rows = 0;
+        if (values != null) {
+            for (int v = 0; v < values.length; v++) {
+                boolean aboveLow = lowInclusive ? values[v] >= low : values[v] > low;
+                boolean belowHigh = highInclusive ? values[v] <= high : values[v] < high;
+                if (aboveLow && belowHigh) {
+                    rows += counts[v];
+                }
+            }
+            return rows / size;
+        }
+        // an interval of a single value still holds the rows equal to it
+        if (low == high && lowInclusive && highInclusive) {
+            return fractionEqual(low);
+        }
+        double width = (max - min) / BUCKETS;
+        if (Double.isInfinite(width)) {
+            return 0.5; // no sensible buckets over an infinite span
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            // the part of the bucket's span inside the interval, as a share of the span
+            double from = Math.max(min + b * width, low);
+            double to = Math.min(min + (b + 1) * width, high);
+            if (to > from) {
+                rows += counts[b] * (to - from) / width;
+            }
+        }
+        return Math.min(1, rows / size);
+    }
+
+    /**
+     * fractionEqual method - estimated share of the rows equal to a value. Without exact counts
+     * the value's bucket is assumed to hold as many distinct values as an exact histogram could.
+     *
+     * @param value the value to look for
+     * @return fraction between 0 and 1
+     */
+    public double fractionEqual(double value) {
+        if (size == 0 || Double.isNaN(value)) {
+            return 0;
+        }
+        if (values != null) {
+            int at = Arrays.binarySearch(values, value);
+            return at >= 0 ? (double) counts[at] / size : 0;
+        }
+        if (value < min || value > max) {
+            return 0;
+        }
+        return (double) counts[bucket(value)] / size * BUCKETS / MAX_EXACT_VALUES;
+    }
+
+    // Bucket holding a value between min and max
+    private int bucket(double value) {
+        if (max == min) {
+            return 0;
+        }
+        return (int) Math.min(BUCKETS - 1, (value - min) / (max - min) * BUCKETS);
+    }
+}
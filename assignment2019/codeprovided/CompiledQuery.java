@@ -0,0 +1,153 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * CompiledQuery.java
+ *
+ * The conditions of a query turned into predicates once, ahead of testing any sample: property
+ * names become ordinals and operators QueryOperator lambdas, ANDed together into a single test.
+ * A condition whose operator is not recognised matches nothing, as before.
+ * The conditions are normalised first: those on each property are folded into a PropertyRange,
+ * so a redundant condition (e.g. <code>qual > 3</code> beside <code>qual > 5</code>) is dropped, and
+ * conditions that contradict each other (e.g. <code>qual > 5 and qual < 3</code>) make the query
+ * empty, answered without reading any sample.
+ * Row predicates for a rack are built on demand, as they read the rack's columns directly and
+ * so must not outlive a change to the rack.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class CompiledQuery {
+
+    // Instance variables
+    private final WineProperty[] properties;
+    private final QueryOperator[] operators;
+    private final double[] values;
+    private final Predicate<WineSample> samplePredicate;
+    // the conditions folded per property, in the order each property first appears
+    private final PropertyRange[] ranges;
+    private final List<QueryCondition> normalizedConditions;
+    private final boolean empty;
+
+    // Constructors
+    public CompiledQuery(List<QueryCondition> queryConditions) {
+        this(fold(queryConditions));
+    }
+
+    // Constructor for conditions folded already, one normalised PropertyRange per property (see PreparedQuery.bind)
+    CompiledQuery(PropertyRange[] ranges) {
+        this.ranges = ranges;
+        boolean contradiction = false;
+        List<QueryCondition> conditions = new ArrayList<>();
+        for (PropertyRange range : ranges) {
+            contradiction |= range.isEmpty();
+            conditions.addAll(range.toConditions());
+        }
+        empty = contradiction;
+        normalizedConditions = Collections.unmodifiableList(conditions);
+        int count = conditions.size();
+        properties = new WineProperty[count];
+        operators = new QueryOperator[count];
+        values = new double[count];
+        Predicate<WineSample> predicate = null;
+        for (int c = 0; c < count; c++) {
+            QueryCondition condition = conditions.get(c);
+            properties[c] = condition.getWineProperty();
+            operators[c] = condition.getQueryOperator();
+            values[c] = condition.getValue();
+            Predicate<WineSample> next = samplePredicate(properties[c].ordinal(), operators[c], values[c]);
+            predicate = predicate == null ? next : predicate.and(next);
+        }
+        samplePredicate = empty ? wine -> false : predicate == null ? wine -> true : predicate;
+    }
+
+    /**
+     * isEmpty method - whether the conditions contradict each other, so that no sample can match
+     *
+     * @return true if the query matches nothing
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Getter for the normalised conditions: per property, in the order each first appears, an = or
+     * up to two bounds and then any != conditions that still exclude something
+     *
+     * @return unmodifiable List of QueryCondition, meaning the same as the conditions compiled
+     */
+    public List<QueryCondition> getNormalizedConditions() {
+        return normalizedConditions;
+    }
+
+    /**
+     * test method - whether a sample meets every condition
+     *
+     * @param wine the sample to test
+     * @return true if it matches the query
+     */
+    public boolean test(WineSample wine) {
+        return samplePredicate.test(wine);
+    }
+
+    /**
+     * rowPredicate method - the same test as a predicate on the row numbers of <code>rack</code>,
+     * comparing the rack's (possibly encoded) column values directly
+     *
+     * @param rack the rack whose rows will be tested
+     * @return predicate accepting the rows that match the query
+     */
+    public IntPredicate rowPredicate(WineSampleRack rack) {
+        if (empty) {
+            return row -> false;
+        }
+        IntPredicate predicate = null;
+        for (int c = 0; c < properties.length; c++) {
+            IntPredicate next = rack.getColumn(properties[c]).predicate(operators[c], values[c]);
+            predicate = predicate == null ? next : predicate.and(next);
+        }
+        return predicate == null ? row -> true : predicate;
+    }
+
+    // The conditions folded per property (not to be changed by the caller)
+    PropertyRange[] getRanges() { return ranges; }
+
+    // Accessors for the compiled (normalised) conditions, by position
+    int getConditionCount() { return properties.length; }
+    WineProperty getProperty(int condition) { return properties[condition]; }
+    QueryOperator getOperator(int condition) { return operators[condition]; }
+    double getValue(int condition) { return values[condition]; }
+
+    // One PropertyRange per property the conditions mention, each normalised, in the order each property first appears
+    static PropertyRange[] fold(List<QueryCondition> conditions) {
+        PropertyRange[] byProperty = new PropertyRange[WineSampleRack.NUMBER_OF_PROPERTIES];
+        List<PropertyRange> ranges = new ArrayList<>();
+        for (QueryCondition condition : conditions) {
+            int ordinal = condition.getWineProperty().ordinal();
+            if (byProperty[ordinal] == null) {
+                byProperty[ordinal] = new PropertyRange(condition.getWineProperty());
+                ranges.add(byProperty[ordinal]);
+            }
+            byProperty[ordinal].add(condition.getQueryOperator(), condition.getValue());
+        }
+        for (PropertyRange range : ranges) {
+            range.normalize();
+        }
+        return ranges.toArray(new PropertyRange[0]);
+    }
+
+    private static Predicate<WineSample> samplePredicate(int ordinal, QueryOperator operator, double value) {
+        if (operator == null) {
+            return wine -> false;
+        }
+        DoublePredicate test = operator.compile(value);
+        return wine -> test.test(wine.getProperty(ordinal));
+    }
+}
@@ -0,0 +1,103 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * DictionaryColumn.java
+ *
+ * Column with few distinct values: a sorted dictionary of them, and one byte per row giving
+ * its position in the dictionary. As the dictionary is sorted, comparing codes orders rows
+ * the same way as comparing values.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class DictionaryColumn extends WineColumn {
+    static final int MAX_ENTRIES = 256;
+
+    private final double[] dictionary;
+    private byte[] codes;
+
+    DictionaryColumn(double[] dictionary, double[] values, int size, int capacity) {
+        this.dictionary = dictionary;
+        this.codes = new byte[Math.max(size, capacity)];
+        for (int row = 0; row < size; row++) {
+            codes[row] = (byte) Arrays.binarySearch(dictionary, values[row]);
+        }
+    }
+
+    // Column taking over codes that have already been filled (see WineCellarSnapshot)
+    DictionaryColumn(double[] dictionary, byte[] codes) {
+        this.dictionary = dictionary;
+        this.codes = codes;
+    }
+
+    public double get(int row) { return dictionary[codes[row] & 0xff]; }
+
+    int getCode(int row) { return codes[row] & 0xff; }
+
+    double[] getDictionary() { return dictionary; }
+
+    boolean set(int row, double value) {
+        int code = Arrays.binarySearch(dictionary, value);
+        if (code < 0) return false;
+        codes[row] = (byte) code;
+        return true;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > codes.length) codes = Arrays.copyOf(codes, capacity);
+    }
+
+    public IntPredicate predicate(QueryOperator operator, double value) {
+        int[] bounds = bounds(value);
+        byte[] column = codes;
+        return rangePredicate(operator, value, bounds[0], bounds[1], row -> column[row] & 0xff);
+    }
+
+    public IntPredicate intervalPredicate(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        int[] lowBounds = bounds(low);
+        int[] highBounds = bounds(high);
+        byte[] column = codes;
+        return codeRange(lowInclusive ? lowBounds[0] : lowBounds[1], highInclusive ? highBounds[1] : highBounds[0], row -> column[row] & 0xff);
+    }
+
+    public void select(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside, long[] words, int from, int to) {
+        int[] lowBounds = bounds(low);
+        int[] highBounds = bounds(high);
+        select(lowInclusive ? lowBounds[0] : lowBounds[1], highInclusive ? highBounds[1] : highBounds[0], inside, words, from, to);
+    }
+
+    Selector selector(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside) {
+        int[] lowBounds = bounds(low);
+        int[] highBounds = bounds(high);
+        int lower = lowInclusive ? lowBounds[0] : lowBounds[1];
+        int upper = highInclusive ? highBounds[1] : highBounds[0];
+        return (words, from, to) -> select(lower, upper, inside, words, from, to);
+    }
+
+    // Mask of rows [from, to) whose codes are in [lower, upper), or outside it
+    private void select(int lower, int upper, boolean inside, long[] words, int from, int to) {
+        long flip = inside ? 0 : -1L;
+        byte[] column = codes;
+        for (int w = 0, row = from; row < to; w++, row += 64) {
+            int n = Math.min(64, to - row);
+            long word = 0;
+            for (int b = 0; b < n; b++) {
+                word |= codeBit(column[row + b] & 0xff, lower, upper) << b;
+            }
+            words[w] &= word ^ flip;
+        }
+    }
+
+    // {lower, upper}: codes in [lower, upper) are the dictionary entries equal to value
+    private int[] bounds(double value) {
+        int lower = 0;
+        while (lower < dictionary.length && dictionary[lower] < value) lower++;
+        int upper = lower;
+        while (upper < dictionary.length && dictionary[upper] <= value) upper++;
+        return new int[] {lower, upper};
+    }
+}
@@ -0,0 +1,90 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * DoubleColumn.java
+ *
+ * Unencoded column: one double per row.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class DoubleColumn extends WineColumn {
+    private double[] values;
+
+    DoubleColumn(int capacity) {
+        values = new double[capacity];
+    }
+
+    DoubleColumn(double[] values, int size, int capacity) {
+        this.values = Arrays.copyOf(values, Math.max(size, capacity));
+    }
+
+    // Column taking over an array that has already been filled
+    DoubleColumn(double[] values) {
+        this.values = values;
+    }
+
+    public double get(int row) { return values[row]; }
+
+    boolean set(int row, double value) {
+        values[row] = value;
+        return true;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) values = Arrays.copyOf(values, capacity);
+    }
+
+    public void copyTo(double[] target, int count) {
+        System.arraycopy(values, 0, target, 0, count);
+    }
+
+    double[] decode(int count) {
+        return values;
+    }
+
+    public void select(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside, long[] words, int from, int to) {
+        // an exclusive bound is the inclusive bound of the next double along, so each row is the same two comparisons
+        double lower = lowInclusive ? low : Math.nextUp(low);
+        double upper = highInclusive ? high : Math.nextDown(high);
+        if ((!lowInclusive && low == Double.POSITIVE_INFINITY) || (!highInclusive && high == Double.NEGATIVE_INFINITY)) {
+            lower = Double.POSITIVE_INFINITY;
+            upper = Double.NEGATIVE_INFINITY;
+        }
+        long flip = inside ? 0 : -1L;
+        double[] column = values;
+        for (int w = 0, row = from; row < to; w++, row += 64) {
+            int n = Math.min(64, to - row);
+            long word = 0;
+            for (int b = 0; b < n; b++) {
+                double value = column[row + b];
+                word |= (value >= lower & value <= upper ? 1L : 0L) << b;
+            }
+            words[w] &= word ^ flip;
+        }
+    }
+
+    // Copies the first <code>count</code> rows of another double column in at row <code>at</code>
+    void put(int at, DoubleColumn source, int count) {
+        System.arraycopy(source.values, 0, values, at, count);
+    }
+
+    public IntPredicate predicate(QueryOperator operator, double value) {
+        double[] column = values;
+        if (operator == null) {
+            return row -> false;
+        }
+        switch (operator) {
+            case GREATER: return row -> column[row] > value;
+            case GREATER_OR_EQUAL: return row -> column[row] >= value;
+            case LESS: return row -> column[row] < value;
+            case LESS_OR_EQUAL: return row -> column[row] <= value;
+            case EQUAL: return row -> column[row] == value;
+            default: return row -> column[row] != value;
+        }
+    }
+}
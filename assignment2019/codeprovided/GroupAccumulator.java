@@ -0,0 +1,206 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GroupAccumulator.java
+ *
+ * Running aggregates of an aggregate query (see QueryEngine.aggregate), kept in primitive arrays
+ * with one slot per group and aggregate: a count per group, and a running sum, minimum or maximum
+ * per aggregate, so that adding a matching row reads the columns it needs and updates a few doubles
+ * without a sample being made. Groups are found by the bits of the grouped property's value in an
+ * open-addressing hash table (0.0 and -0.0 are one group, as are all NaNs); the last group found is
+ * checked first, as runs of rows often share a value. Without a property to group by there is a
+ * single group. One accumulator is filled per segment of rows, and accumulators are merged after.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class GroupAccumulator {
+
+    // What each aggregate slot keeps
+    private static final int NONE = 0, SUM = 1, MIN = 2, MAX = 3;
+
+    // Instance variables: the query's grouping and aggregates, and the columns of the rack rows are added from
+    private final WineProperty groupBy;
+    private final List<Aggregate> aggregates;
+    private final int[] kinds;
+    private final int[] ordinals;
+    private final WineColumn groupColumn;
+    private final WineColumn[] columns;
+    // per group: the key's bits and the count; per group and aggregate: the running value, at group * width + aggregate
+    private final int width;
+    private long[] keys = new long[8];
+    private long[] counts = new long[8];
+    private double[] values;
+    private int groupCount;
+    // hash table of group + 1 by key (0 for an empty slot), and the group found last
+    private int[] table = new int[16];
+    private int last = -1;
+
+    // Constructor: rows are added from <code>rack</code>'s columns, or samples one by one if it is null
+    GroupAccumulator(WineProperty groupBy, List<Aggregate> aggregates, WineSampleRack rack) {
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+        width = aggregates.size();
+        kinds = new int[width];
+        ordinals = new int[width];
+        columns = new WineColumn[width];
+        for (int a = 0; a < width; a++) {
+            Aggregate aggregate = aggregates.get(a);
+            switch (aggregate.getFunction()) {
+                case COUNT: kinds[a] = NONE; break;
+                case MIN: kinds[a] = MIN; break;
+                case MAX: kinds[a] = MAX; break;
+                default: kinds[a] = SUM; // avg is the sum divided by the count, once the rows are all in
+            }
+            if (aggregate.getWineProperty() != null) {
+                ordinals[a] = aggregate.getWineProperty().ordinal();
+                columns[a] = rack == null ? null : rack.getColumn(aggregate.getWineProperty());
+            }
+        }
+        groupColumn = rack == null || groupBy == null ? null : rack.getColumn(groupBy);
+        values = new double[keys.length * width];
+        if (groupBy == null) {
+            newGroup(Double.doubleToLongBits(Double.NaN));
+        }
+    }
+
+    /**
+     * add method - adds row <code>row</code> of the rack to its group
+     *
+     * @param row the row
+     */
+    void add(int row) {
+        int g = groupColumn == null ? 0 : group(groupColumn.get(row));
+        counts[g]++;
+        for (int a = 0, at = g * width; a < width; a++, at++) {
+            switch (kinds[a]) {
+                case SUM: values[at] += columns[a].get(row); break;
+                case MIN: values[at] = Math.min(values[at], columns[a].get(row)); break;
+                case MAX: values[at] = Math.max(values[at], columns[a].get(row)); break;
+            }
+        }
+    }
+
+    /**
+     * add method - adds a sample to its group
+     *
+     * @param wine the sample
+     */
+    void add(WineSample wine) {
+        int g = groupBy == null ? 0 : group(wine.getProperty(groupBy.ordinal()));
+        counts[g]++;
+        for (int a = 0, at = g * width; a < width; a++, at++) {
+            switch (kinds[a]) {
+                case SUM: values[at] += wine.getProperty(ordinals[a]); break;
+                case MIN: values[at] = Math.min(values[at], wine.getProperty(ordinals[a])); break;
+                case MAX: values[at] = Math.max(values[at], wine.getProperty(ordinals[a])); break;
+            }
+        }
+    }
+
+    /**
+     * merge method - adds the groups of another accumulator of the same query to this one's
+     *
+     * @param other the accumulator to merge in, e.g. that of a later segment of rows
+     */
+    void merge(GroupAccumulator other) {
+        for (int o = 0; o < other.groupCount; o++) {
+            int g = groupBy == null ? 0 : group(Double.longBitsToDouble(other.keys[o]));
+            counts[g] += other.counts[o];
+            for (int a = 0, at = g * width, from = o * width; a < width; a++, at++, from++) {
+                switch (kinds[a]) {
+                    case SUM: values[at] += other.values[from]; break;
+                    case MIN: values[at] = Math.min(values[at], other.values[from]); break;
+                    case MAX: values[at] = Math.max(values[at], other.values[from]); break;
+                }
+            }
+        }
+    }
+
+    /**
+     * toResult method - the finished aggregates, groups in ascending order of their key (NaN last)
+     *
+     * @return AggregateResult of the groups
+     */
+    AggregateResult toResult() {
+        Integer[] order = new Integer[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+            order[g] = g;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(Double.longBitsToDouble(keys[a]), Double.longBitsToDouble(keys[b])));
+        double[] groupKeys = new double[groupCount];
+        long[] groupCounts = new long[groupCount];
+        double[][] groupValues = new double[groupCount][width];
+        for (int i = 0; i < groupCount; i++) {
+            int g = order[i];
+            groupKeys[i] = groupBy == null ? Double.NaN : Double.longBitsToDouble(keys[g]);
+            groupCounts[i] = counts[g];
+            for (int a = 0; a < width; a++) {
+                switch (aggregates.get(a).getFunction()) {
+                    case COUNT: groupValues[i][a] = counts[g]; break;
+                    case AVG: groupValues[i][a] = values[g * width + a] / counts[g]; break;
+                    default: groupValues[i][a] = values[g * width + a];
+                }
+            }
+        }
+        return new AggregateResult(groupBy, aggregates, groupKeys, groupCounts, groupValues);
+    }
+
+    // The group of a key, made if it is new
+    private int group(double key) {
+        long bits = Double.doubleToLongBits(key == 0 ? 0.0 : key);
+        if (last >= 0 && keys[last] == bits) {
+            return last;
+        }
+        int mask = table.length - 1;
+        int slot = hash(bits) & mask;
+        while (table[slot] != 0) {
+            int g = table[slot] - 1;
+            if (keys[g] == bits) {
+                return last = g;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int g = newGroup(bits);
+        table[slot] = g + 1;
+        if (groupCount * 2 > table.length) {
+            rehash();
+        }
+        return last = g;
+    }
+
+    private int newGroup(long bits) {
+        if (groupCount == keys.length) {
+            keys = Arrays.copyOf(keys, groupCount * 2);
+            counts = Arrays.copyOf(counts, groupCount * 2);
+            values = Arrays.copyOf(values, groupCount * 2 * width);
+        }
+        keys[groupCount] = bits;
+        for (int a = 0, at = groupCount * width; a < width; a++, at++) {
+            values[at] = kinds[a] == MIN ? Double.POSITIVE_INFINITY : kinds[a] == MAX ? Double.NEGATIVE_INFINITY : 0;
+        }
+        return groupCount++;
+    }
+
+    // Doubles the hash table, putting every group back
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int g = 0; g < groupCount; g++) {
+            int slot = hash(keys[g]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = g + 1;
+        }
+    }
+
+    private static int hash(long bits) {
+        long h = bits * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,90 @@
+package assignment2019.codeprovided;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * OffHeapColumn.java
+ *
+ * Unencoded column kept outside the Java heap, in direct buffers of SEGMENT_ROWS rows each,
+ * so it can grow past both the heap and the 2GB limit of a single buffer without copying.
+ * Holds doubles, or ints when used as the id column of an off-heap rack.
+ * Direct buffers count against the JVM's -XX:MaxDirectMemorySize, which defaults to the maximum
+ * heap size (-Xmx), so a run that keeps more rack data off-heap than its heap could hold must
+ * raise that limit; growing a column past it throws OutOfMemoryError ("Direct buffer memory").
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class OffHeapColumn extends WineColumn {
+    private static final int SEGMENT_SHIFT = 16;
+    static final int SEGMENT_ROWS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_ROWS - 1;
+
+    private final int width;
+    private ByteBuffer[] segments = new ByteBuffer[0];
+
+    OffHeapColumn(int width, int capacity) {
+        this.width = width;
+        ensureCapacity(capacity);
+    }
+
+    public double get(int row) { return segments[row >>> SEGMENT_SHIFT].getDouble((row & SEGMENT_MASK) << 3); }
+
+    int getInt(int row) { return segments[row >>> SEGMENT_SHIFT].getInt((row & SEGMENT_MASK) << 2); }
+
+    boolean set(int row, double value) {
+        segments[row >>> SEGMENT_SHIFT].putDouble((row & SEGMENT_MASK) << 3, value);
+        return true;
+    }
+
+    void setInt(int row, int value) {
+        segments[row >>> SEGMENT_SHIFT].putInt((row & SEGMENT_MASK) << 2, value);
+    }
+
+    void ensureCapacity(int capacity) {
+        int needed = (int) ((capacity + (long) SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        if (needed > segments.length) {
+            int from = segments.length;
+            segments = Arrays.copyOf(segments, needed);
+            for (int i = from; i < needed; i++) {
+                segments[i] = ByteBuffer.allocateDirect(SEGMENT_ROWS * width).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    // Copies <code>count</code> values of this column's width from <code>source</code> (little-endian) into rows [at, at + count)
+    void put(int at, ByteBuffer source, int count) {
+        ByteBuffer from = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int row = at, end = at + count; row < end; ) {
+            int n = Math.min(end - row, SEGMENT_ROWS - (row & SEGMENT_MASK));
+            ByteBuffer to = segments[row >>> SEGMENT_SHIFT].duplicate().order(ByteOrder.nativeOrder());
+            to.position((row & SEGMENT_MASK) * width);
+            if (width == Double.BYTES) {
+                to.asDoubleBuffer().put(from.asDoubleBuffer().limit(n));
+            }
+            else {
+                to.asIntBuffer().put(from.asIntBuffer().limit(n));
+            }
+            from.position(from.position() + n * width);
+            row += n;
+        }
+    }
+
+    public IntPredicate predicate(QueryOperator operator, double value) {
+        if (operator == null) {
+            return row -> false;
+        }
+        switch (operator) {
+            case GREATER: return row -> get(row) > value;
+            case GREATER_OR_EQUAL: return row -> get(row) >= value;
+            case LESS: return row -> get(row) < value;
+            case LESS_OR_EQUAL: return row -> get(row) <= value;
+            case EQUAL: return row -> get(row) == value;
+            default: return row -> get(row) != value;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PreparedQuery.java
+ *
+ * A query of the query language (see QueryParser) parsed once and kept for reuse: its wine type
+ * and conditions, grouped into the alternatives joined by "or". A condition's value may be a
+ * <code>?</code> parameter slot, e.g. <code>select red where qual >= ? and alc > ?</code>, filled in
+ * by bind each time the query is run. Binding makes a new Query without looking at the text again,
+ * with the query's <code>order by</code> and <code>limit</code>, if any, or its <code>group by</code>
+ * and <code>compute</code> aggregates for an aggregate query.
+ * How the conditions fold into one PropertyRange per property (see CompiledQuery) is worked out once,
+ * so bind only puts the values into the ranges; the Query it makes is compiled already. A query
+ * without parameters is compiled once and for all, so every Query bound from it shares one
+ * CompiledQuery, and with it the plans kept by the racks (see QueryPlanner.plan).
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class PreparedQuery {
+
+    // Instance variables: one entry per condition, in the order written
+    private final String text;
+    private final WineType wineType;
+    private final WineProperty[] properties;
+    private final String[] operators;
+    private final double[] values;
+    // parameter slot of each condition's value, or -1 for a value written in the query
+    private final int[] slots;
+    // index just past the last condition of each alternative
+    private final int[] alternativeEnds;
+    private final int parameterCount;
+    // each condition's operator looked up, and its condition made once if its value is written in the query
+    private final QueryOperator[] queryOperators;
+    private final QueryCondition[] writtenConditions;
+    // the properties of each alternative's ranges, in the order each first appears, and each condition's range
+    private final WineProperty[][] rangeProperties;
+    private final int[] rangeOf;
+    // for a query without parameters, its conditions and their compiled form, made once
+    private final List<List<QueryCondition>> boundAlternatives;
+    private final List<CompiledQuery> boundCompiled;
+    // order by property (or null) and direction, and limit (or -1), as for Query
+    private final WineProperty orderBy;
+    private final boolean descending;
+    private final int limit;
+    // group by property (or null) and aggregates (or null), as for Query.setGroupBy
+    private final WineProperty groupBy;
+    private final List<Aggregate> aggregates;
+
+    // Constructor (prepared queries are made by QueryParser)
+    PreparedQuery(String text, WineType wineType, WineProperty[] properties, String[] operators, double[] values,
+                  int[] slots, int[] alternativeEnds, int parameterCount, WineProperty orderBy, boolean descending, int limit,
+                  WineProperty groupBy, List<Aggregate> aggregates) {
+        this.text = text;
+        this.wineType = wineType;
+        this.properties = properties;
+        this.operators = operators;
+        this.values = values;
+        this.slots = slots;
+        this.alternativeEnds = alternativeEnds;
+        this.parameterCount = parameterCount;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.limit = limit;
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+        queryOperators = new QueryOperator[properties.length];
+        writtenConditions = new QueryCondition[properties.length];
+        rangeProperties = new WineProperty[alternativeEnds.length][];
+        rangeOf = new int[properties.length];
+        int c = 0;
+        for (int a = 0; a < alternativeEnds.length; a++) {
+            int[] byProperty = new int[WineSampleRack.NUMBER_OF_PROPERTIES];
+            Arrays.fill(byProperty, -1);
+            WineProperty[] rangeProperties = new WineProperty[alternativeEnds[a] - c];
+            int ranges = 0;
+            for (; c < alternativeEnds[a]; c++) {
+                queryOperators[c] = QueryOperator.fromSymbol(operators[c]);
+                if (slots[c] < 0) {
+                    writtenConditions[c] = new QueryCondition(properties[c], operators[c], values[c]);
+                }
+                int ordinal = properties[c].ordinal();
+                if (byProperty[ordinal] < 0) {
+                    byProperty[ordinal] = ranges;
+                    rangeProperties[ranges++] = properties[c];
+                }
+                rangeOf[c] = byProperty[ordinal];
+            }
+            this.rangeProperties[a] = Arrays.copyOf(rangeProperties, ranges);
+        }
+        boundAlternatives = parameterCount == 0 ? conditions(new double[0]) : null;
+        boundCompiled = parameterCount == 0 ? compile(new double[0]) : null;
+    }
+
+    // Getters
+    public String getText() { return text; }
+    public WineType getWineType() { return wineType; }
+    public int getParameterCount() { return parameterCount; }
+    public int getAlternativeCount() { return alternativeEnds.length; }
+    public WineProperty getOrderBy() { return orderBy; }
+    public boolean isDescending() { return descending; }
+    public int getLimit() { return limit; }
+    public WineProperty getGroupBy() { return groupBy; }
+    public List<Aggregate> getAggregates() { return aggregates; }
+    public boolean isAggregate() { return aggregates != null; }
+
+    /**
+     * bind method - a Query over <code>wineList</code> with the parameter slots filled in, in the order
+     * they appear in the text
+     *
+     * @param wineList the samples to query, normally the cellar's list for getWineType()
+     * @param parameters a value for each <code>?</code> of the query
+     * @return Query ready to solve (a Query.anyOf the alternatives if there are several)
+     * @throws IllegalArgumentException if the number of parameters does not match the slots
+     */
+    public Query bind(List<WineSample> wineList, double... parameters) {
+        if (parameters.length != parameterCount) {
+            throw new IllegalArgumentException("Query expects " + parameterCount + " parameter(s) but was given "
+                + parameters.length + ": " + text);
+        }
+        List<List<QueryCondition>> alternatives = parameterCount == 0 ? boundAlternatives : conditions(parameters);
+        Query query = alternatives.size() == 1
+            ? new Query(wineList, alternatives.get(0), wineType)
+            : Query.anyOf(wineList, alternatives, wineType);
+        query.compiled = parameterCount == 0 ? boundCompiled : compile(parameters);
+        query.setOrderBy(orderBy, descending);
+        query.setLimit(limit);
+        query.setGroupBy(groupBy, aggregates);
+        return query;
+    }
+
+    // The conditions of each alternative, with the parameters in their slots (read-only lists)
+    private List<List<QueryCondition>> conditions(double[] parameters) {
+        List<List<QueryCondition>> alternatives = new ArrayList<>(alternativeEnds.length);
+        int c = 0;
+        for (int end : alternativeEnds) {
+            List<QueryCondition> conditions = new ArrayList<>(end - c);
+            for (; c < end; c++) {
+                conditions.add(slots[c] < 0 ? writtenConditions[c] : new QueryCondition(properties[c], operators[c], parameters[slots[c]]));
+            }
+            alternatives.add(Collections.unmodifiableList(conditions));
+        }
+        return alternatives;
+    }
+
+    // Each alternative compiled, its values (with the parameters in their slots) added to the ranges worked
+    // out by the constructor, as CompiledQuery.fold would fold them
+    private List<CompiledQuery> compile(double[] parameters) {
+        List<CompiledQuery> compiled = new ArrayList<>(alternativeEnds.length);
+        int c = 0;
+        for (int a = 0; a < alternativeEnds.length; a++) {
+            PropertyRange[] ranges = new PropertyRange[rangeProperties[a].length];
+            for (int r = 0; r < ranges.length; r++) {
+                ranges[r] = new PropertyRange(rangeProperties[a][r]);
+            }
+            for (; c < alternativeEnds[a]; c++) {
+                ranges[rangeOf[c]].add(queryOperators[c], slots[c] < 0 ? values[c] : parameters[slots[c]]);
+            }
+            for (PropertyRange range : ranges) {
+                range.normalize();
+            }
+            compiled.add(new CompiledQuery(ranges));
+        }
+        return Collections.unmodifiableList(compiled);
+    }
+
+    /**
+     * toString method - the text the query was prepared from
+     *
+     * @return String of the query
+     */
+    public String toString() {
+        return text;
+    }
+}
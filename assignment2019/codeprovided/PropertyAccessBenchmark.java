@@ -0,0 +1,102 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PropertyAccessBenchmark.java
+ *
+ * Times the scan a query condition makes over every sample and property, reading each value
+ * through the old 12-way switch on WineProperty and then through the ordinal-indexed
+ * getProperty(int), over both plain WineSample objects and the flyweights of a rack.
+ * Usage: java assignment2019.codeprovided.PropertyAccessBenchmark [wineFile [rounds]]
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class PropertyAccessBenchmark {
+
+    public static void main(String[] args) {
+        String wineFile = args.length > 0 ? args[0] : "resources/winequality-white.csv";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<WineSample> racked = AbstractWineSampleCellar.readWineFile(wineFile, WineType.WHITE);
+        List<WineSample> plain = new ArrayList<>();
+        double[] values = new double[WineSampleRack.NUMBER_OF_PROPERTIES];
+        for (WineSample wine : racked) {
+            wine.getProperties(values);
+            plain.add(new WineSample(wine.getId(), wine.getType(), values[0], values[1], values[2], values[3], values[4],
+                values[5], values[6], values[7], values[8], values[9], values[10], values[11]));
+        }
+        if (plain.isEmpty()) {
+            return;
+        }
+
+        // The first rounds warm up the JIT; only the last one is reported
+        for (int round = 1; round <= rounds; round++) {
+            boolean report = round == rounds;
+            time("plain, switch ", plain, report, PropertyAccessBenchmark::countBySwitch);
+            time("plain, ordinal", plain, report, PropertyAccessBenchmark::countByOrdinal);
+            time("rack,  switch ", racked, report, PropertyAccessBenchmark::countBySwitch);
+            time("rack,  ordinal", racked, report, PropertyAccessBenchmark::countByOrdinal);
+        }
+    }
+
+    private interface Scan {
+        long count(List<WineSample> wines, int property, double value);
+    }
+
+    // Runs <code>scan</code> once per property, as a query with one condition on each would
+    private static void time(String label, List<WineSample> wines, boolean report, Scan scan) {
+        long start = System.nanoTime();
+        long matches = 0;
+        for (WineProperty property : WineProperty.values()) {
+            matches += scan.count(wines, property.ordinal(), wines.get(0).getProperty(property));
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("%s  %8.3f ms  (%d matches)%n", label, elapsed / 1e6, matches);
+        }
+    }
+
+    private static long countBySwitch(List<WineSample> wines, int property, double value) {
+        WineProperty wineProperty = WineProperty.values()[property];
+        long count = 0;
+        for (WineSample wine : wines) {
+            if (bySwitch(wine, wineProperty) > value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long countByOrdinal(List<WineSample> wines, int property, double value) {
+        long count = 0;
+        for (WineSample wine : wines) {
+            if (wine.getProperty(property) > value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // WineSample.getProperty(WineProperty) as it used to be
+    private static double bySwitch(WineSample wine, WineProperty property) {
+        switch (property) {
+            case FixedAcidity: return wine.getFixedAcidity();
+            case VolatileAcidity: return wine.getVolatileAcidity();
+            case CitricAcid: return wine.getCitricAcid();
+            case ResidualSugar: return wine.getResidualSugar();
+            case Chlorides: return wine.getChlorides();
+            case FreeSulfurDioxide: return wine.getFreeSulfurDioxide();
+            case TotalSulfurDioxide: return wine.getTotalSulfurDioxide();
+            case Density: return wine.getDensity();
+            case PH: return wine.getpH();
+            case Sulphates: return wine.getSulphates();
+            case Alcohol: return wine.getAlcohol();
+            case Quality: return wine.getQuality();
+            default: return -1;
+        }
+    }
+}
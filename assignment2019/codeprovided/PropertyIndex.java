@@ -0,0 +1,203 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+
+/**
+ * PropertyIndex.java
+ *
+ * Sorted index over one property column of a WineSampleRack: the rack's row numbers ordered
+ * by value (rows with equal values in row order). Values are read back through the column, so
+ * the index takes 4 bytes a row and never copies the column, wherever it is kept. Any
+ * condition other than != matches a contiguous run of the index, found by binary search,
+ * so a selective condition costs O(log n) plus the rows it matches rather than a full scan.
+ * NaN values sort last and are never part of a run, as they satisfy none of those operators.
+ * Once rows have been appended to the rack, extend sorts just the new rows and merges them in,
+ * rather than sorting the whole column again.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class PropertyIndex {
+
+    // Instance variables
+    private final WineColumn column;
+    private final int[] rows;
+    // number of entries that are not NaN, i.e. the part of the index a run can cover
+    private final int valueCount;
+
+    // Constructor
+    public PropertyIndex(WineColumn column, int size) {
+        this.column = column;
+        rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+            if (!Double.isNaN(column.get(row))) {
+                count++;
+            }
+        }
+        sort(rows, column);
+        valueCount = count;
+    }
+
+    // Constructor for an index whose rows are sorted already (see extend)
+    private PropertyIndex(WineColumn column, int[] rows, int valueCount) {
+        this.column = column;
+        this.rows = rows;
+        this.valueCount = valueCount;
+    }
+
+    /**
+     * extend method - the index of the rack once rows [size(), size) have been appended to it:
+     * the new rows are sorted by themselves, O(k log k), then merged with this index's in one
+     * pass. As every new row comes after every old one, old rows go first among equal values.
+     *
+     * @param column the property column now, which may have been re-encoded since
+     * @param size number of rows in the rack now, at least size()
+     * @return PropertyIndex over rows [0, size)
+     */
+    public PropertyIndex extend(WineColumn column, int size) {
+        int from = rows.length;
+        int[] added = new int[size - from];
+        int count = valueCount;
+        for (int i = 0; i < added.length; i++) {
+            added[i] = from + i;
+            if (!Double.isNaN(column.get(from + i))) {
+                count++;
+            }
+        }
+        sort(added, column);
+        int[] merged = new int[size];
+        int i = 0, j = 0, k = 0;
+        while (i < from && j < added.length) {
+            merged[k++] = Double.compare(column.get(added[j]), column.get(rows[i])) < 0 ? added[j++] : rows[i++];
+        }
+        while (i < from) merged[k++] = rows[i++];
+        while (j < added.length) merged[k++] = added[j++];
+        return new PropertyIndex(column, merged, count);
+    }
+
+    /**
+     * Getter for the number of rows indexed
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Getter for the row at a position of the index
+     *
+     * @param position place in value order
+     * @return row number in the rack
+     */
+    public int getRow(int position) {
+        return rows[position];
+    }
+
+    /**
+     * Getter for the value at a position of the index
+     *
+     * @param position place in value order
+     * @return value of the row at that position
+     */
+    public double getValue(int position) {
+        return column.get(rows[position]);
+    }
+
+    /**
+     * range method - the run of the index matching <code>property operator value</code>
+     *
+     * @param operator the comparison
+     * @param value the value to compare with
+     * @return {from, to}: positions [from, to) of the matching rows, or null if they are not contiguous
+     *         (for != or an unrecognised operator)
+     */
+    public int[] range(QueryOperator operator, double value) {
+        if (operator == null || operator == QueryOperator.NOT_EQUAL) {
+            return null;
+        }
+        if (Double.isNaN(value)) {
+            return new int[] {0, 0};
+        }
+        switch (operator) {
+            case GREATER: return new int[] {upperBound(value), valueCount};
+            case GREATER_OR_EQUAL: return new int[] {lowerBound(value), valueCount};
+            case LESS: return new int[] {0, lowerBound(value)};
+            case LESS_OR_EQUAL: return new int[] {0, upperBound(value)};
+            default: return new int[] {lowerBound(value), upperBound(value)};
+        }
+    }
+
+    /**
+     * range method - the run of the index whose values lie in an interval
+     *
+     * @param low lower bound (may be negative infinity)
+     * @param lowInclusive whether a value equal to <code>low</code> is in the interval
+     * @param high upper bound (may be positive infinity)
+     * @param highInclusive whether a value equal to <code>high</code> is in the interval
+     * @return {from, to}: positions [from, to) of the matching rows
+     */
+    public int[] range(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        int from = lowInclusive ? lowerBound(low) : upperBound(low);
+        int to = highInclusive ? upperBound(high) : lowerBound(high);
+        return new int[] {from, Math.max(from, to)};
+    }
+
+    /**
+     * copyRows method - the rows at positions [from, to), in ascending row order
+     *
+     * @param from first position
+     * @param to position just past the last
+     * @return array of row numbers
+     */
+    public int[] copyRows(int from, int to) {
+        int[] slice = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(slice);
+        return slice;
+    }
+
+    // First position whose value is >= value
+    private int lowerBound(double value) {
+        int low = 0, high = valueCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (column.get(rows[middle]) < value) low = middle + 1; else high = middle;
+        }
+        return low;
+    }
+
+    // First position whose value is > value
+    private int upperBound(double value) {
+        int low = 0, high = valueCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (column.get(rows[middle]) <= value) low = middle + 1; else high = middle;
+        }
+        return low;
+    }
+
+    // Stable bottom-up merge sort of <code>rows</code> by their value, NaN last
+    private static void sort(int[] rows, WineColumn column) {
+        int[] buffer = new int[rows.length];
+        int[] from = rows, to = buffer;
+        for (int width = 1; width < rows.length; width <<= 1) {
+            for (int low = 0; low < rows.length; low += width << 1) {
+                int middle = Math.min(low + width, rows.length);
+                int high = Math.min(low + (width << 1), rows.length);
+                int i = low, j = middle, k = low;
+                while (i < middle && j < high) {
+                    to[k++] = Double.compare(column.get(from[j]), column.get(from[i])) < 0 ? from[j++] : from[i++];
+                }
+                while (i < middle) to[k++] = from[i++];
+                while (j < high) to[k++] = from[j++];
+            }
+            int[] swap = from; from = to; to = swap;
+        }
+        if (from != rows) {
+            System.arraycopy(from, 0, rows, 0, rows.length);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * PropertyRange.java
+ *
+ * All the conditions of a query on one WineProperty folded into a single check: an interval
+ * from the <, <=, >, >= and = conditions (each tightening one bound), plus the values excluded
+ * by != conditions. Testing a row is then one interval check and a few inequalities, rather
+ * than a predicate per condition. A range that no condition bounds (only != conditions) also
+ * matches NaN, as != does; a bounded one never does.
+ * Once folded, a range can tell whether it is empty (e.g. <code>qual > 5 and qual < 3</code>), drops
+ * conditions that others make redundant (see normalize and toConditions), and can compare itself
+ * with a column's lowest and highest value to find that it matches every row, or none, in O(1).
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class PropertyRange {
+
+    // Instance variables
+    private final WineProperty property;
+    private double low = Double.NEGATIVE_INFINITY;
+    private boolean lowInclusive = true;
+    private double high = Double.POSITIVE_INFINITY;
+    private boolean highInclusive = true;
+    // whether any condition other than != applies, i.e. whether the interval is checked at all
+    private boolean bounded;
+    // set by a condition nothing can meet: an unrecognised operator, or NaN compared other than by !=
+    private boolean never;
+    private double[] excluded = new double[0];
+
+    // Constructor
+    public PropertyRange(WineProperty property) {
+        this.property = property;
+    }
+
+    /**
+     * add method - folds the condition <code>property operator value</code> into the range
+     *
+     * @param operator the comparison, or null (for an unrecognised operator) to match nothing
+     * @param value the value to compare with
+     */
+    public void add(QueryOperator operator, double value) {
+        if (operator == QueryOperator.NOT_EQUAL) {
+            // every value is != NaN, so excluding it changes nothing
+            if (!Double.isNaN(value)) {
+                excluded = Arrays.copyOf(excluded, excluded.length + 1);
+                excluded[excluded.length - 1] = value;
+            }
+            return;
+        }
+        if (operator == null || Double.isNaN(value)) {
+            never = true;
+            return;
+        }
+        bounded = true;
+        switch (operator) {
+            case GREATER: raiseLow(value, false); break;
+            case GREATER_OR_EQUAL: raiseLow(value, true); break;
+            case LESS: lowerHigh(value, false); break;
+            case LESS_OR_EQUAL: lowerHigh(value, true); break;
+            default: raiseLow(value, true); lowerHigh(value, true);
+        }
+    }
+
+    // Getters
+    public WineProperty getWineProperty() { return property; }
+    public double getLow() { return low; }
+    public boolean isLowInclusive() { return lowInclusive; }
+    public double getHigh() { return high; }
+    public boolean isHighInclusive() { return highInclusive; }
+    public boolean isBounded() { return bounded; }
+    public boolean isNever() { return never; }
+    public double[] getExcluded() { return excluded.clone(); }
+
+    /**
+     * normalize method - drops the excluded values that cannot matter: repeats, and any value
+     * outside a bounded interval (which the interval excludes already)
+     */
+    public void normalize() {
+        double[] kept = new double[excluded.length];
+        int count = 0;
+        for (double value : excluded) {
+            boolean repeat = false;
+            for (int k = 0; k < count && !repeat; k++) {
+                repeat = kept[k] == value;
+            }
+            if (!repeat && (!bounded || inInterval(value))) {
+                kept[count++] = value;
+            }
+        }
+        excluded = Arrays.copyOf(kept, count);
+    }
+
+    /**
+     * isEmpty method - whether the conditions contradict each other, so that no value at all is in the range
+     *
+     * @return true if nothing can match
+     */
+    public boolean isEmpty() {
+        if (never) {
+            return true;
+        }
+        if (!bounded) {
+            return false;
+        }
+        if (low > high || (low == high && !(lowInclusive && highInclusive))) {
+            return true;
+        }
+        // a single value that is also excluded
+        if (low == high) {
+            for (double value : excluded) {
+                if (value == low) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * matchesAll method - whether every value of a column lies in the range, judged from the column's
+     * lowest and highest value alone. A column holding NaN (whose min and max are then NaN) never qualifies.
+     *
+     * @param min lowest value of the column
+     * @param max highest value of the column
+     * @return true if every row matches
+     */
+    public boolean matchesAll(double min, double max) {
+        if (never || Double.isNaN(min) || Double.isNaN(max)) {
+            return false;
+        }
+        if (bounded && !(inInterval(min) && inInterval(max))) {
+            return false;
+        }
+        for (double value : excluded) {
+            if (value >= min && value <= max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * matchesNone method - whether no value of a column can lie in the range, judged from the column's
+     * lowest and highest value alone
+     *
+     * @param min lowest value of the column
+     * @param max highest value of the column
+     * @return true if no row matches
+     */
+    public boolean matchesNone(double min, double max) {
+        if (isEmpty()) {
+            return true;
+        }
+        if (!bounded) {
+            return false;
+        }
+        boolean belowMin = highInclusive ? high < min : high <= min;
+        boolean aboveMax = lowInclusive ? low > max : low >= max;
+        return belowMin || aboveMax;
+    }
+
+    /**
+     * toConditions method - the fewest conditions that mean the same as the range: an = or up to
+     * two bounds, then a != per excluded value. Meaningless for an empty range.
+     *
+     * @return List of QueryCondition on the property
+     */
+    public List<QueryCondition> toConditions() {
+        List<QueryCondition> conditions = new ArrayList<>();
+        if (never) {
+            return conditions;
+        }
+        if (bounded) {
+            boolean hasLow = low != Double.NEGATIVE_INFINITY || !lowInclusive;
+            boolean hasHigh = high != Double.POSITIVE_INFINITY || !highInclusive;
+            if (low == high && lowInclusive && highInclusive) {
+                conditions.add(condition(QueryOperator.EQUAL, low));
+            }
+            else {
+                // an interval with neither bound still rules out NaN, so keeps one of them
+                if (hasLow || !hasHigh) {
+                    conditions.add(condition(lowInclusive ? QueryOperator.GREATER_OR_EQUAL : QueryOperator.GREATER, low));
+                }
+                if (hasHigh) {
+                    conditions.add(condition(highInclusive ? QueryOperator.LESS_OR_EQUAL : QueryOperator.LESS, high));
+                }
+            }
+        }
+        for (double value : excluded) {
+            conditions.add(condition(QueryOperator.NOT_EQUAL, value));
+        }
+        return conditions;
+    }
+
+    /**
+     * predicate method - the range as a test on the row numbers of a column
+     *
+     * @param column the column holding the property
+     * @return predicate accepting the rows whose value is in the range
+     */
+    public IntPredicate predicate(WineColumn column) {
+        if (never) {
+            return row -> false;
+        }
+        IntPredicate predicate = bounded ? column.intervalPredicate(low, lowInclusive, high, highInclusive) : null;
+        for (double value : excluded) {
+            IntPredicate next = column.predicate(QueryOperator.NOT_EQUAL, value);
+            predicate = predicate == null ? next : predicate.and(next);
+        }
+        return predicate == null ? row -> true : predicate;
+    }
+
+    /**
+     * select method - ANDs the range into a selection mask over rows [from, to) of a column
+     * (see WineColumn.select): the interval keeps the rows inside it, and each excluded value
+     * drops the rows equal to it
+     *
+     * @param column the column holding the property
+     * @param words the selection mask, one word per 64 rows from <code>from</code>
+     * @param from first row
+     * @param to row just past the last
+     */
+    public void select(WineColumn column, long[] words, int from, int to) {
+        selector(column).select(words, from, to);
+    }
+
+    // select for one column, with what the bounds and excluded values mean for its codes worked out
+    // once, rather than for every block of a scan (see QueryPlan)
+    WineColumn.Selector selector(WineColumn column) {
+        if (never) {
+            return (words, from, to) -> Arrays.fill(words, 0, (to - from + 63) >>> 6, 0);
+        }
+        WineColumn.Selector interval = bounded ? column.selector(low, lowInclusive, high, highInclusive, true) : null;
+        WineColumn.Selector[] exclusions = new WineColumn.Selector[excluded.length];
+        int e = 0;
+        for (double value : excluded) {
+            exclusions[e++] = column.selector(value, true, value, true, false);
+        }
+        return (words, from, to) -> {
+            if (interval != null) {
+                interval.select(words, from, to);
+            }
+            for (WineColumn.Selector exclusion : exclusions) {
+                exclusion.select(words, from, to);
+            }
+        };
+    }
+
+    /**
+     * range method - the run of a sorted index holding the interval, the excluded values being
+     * left to the predicate
+     *
+     * @param index sorted index over the property
+     * @return {from, to}: positions [from, to) of the index, or null if the range is not bounded
+     */
+    public int[] range(PropertyIndex index) {
+        if (never) {
+            return new int[] {0, 0};
+        }
+        return bounded ? index.range(low, lowInclusive, high, highInclusive) : null;
+    }
+
+    /**
+     * rows method - the rows in the range, from a bitmap index over the property
+     *
+     * @param index bitmap index over the property
+     * @return RowBitmap of the matching rows
+     */
+    public RowBitmap rows(BitmapIndex index) {
+        if (never) {
+            return RowBitmap.EMPTY;
+        }
+        RowBitmap rows = bounded ? index.rows(low, lowInclusive, high, highInclusive) : RowBitmap.range(index.size());
+        for (double value : excluded) {
+            rows = rows.andNot(index.rows(QueryOperator.EQUAL, value));
+        }
+        return rows;
+    }
+
+    /**
+     * estimate method - the share of rows the range is expected to keep
+     *
+     * @param histogram histogram of the property
+     * @return fraction between 0 and 1
+     */
+    public double estimate(ColumnHistogram histogram) {
+        if (never) {
+            return 0;
+        }
+        double fraction = bounded ? histogram.fraction(low, lowInclusive, high, highInclusive) : 1;
+        for (double value : excluded) {
+            fraction -= histogram.fractionEqual(value);
+        }
+        return Math.max(0, fraction);
+    }
+
+    /**
+     * toString method - the range as it would be written in a query, e.g. <code>5.0 < quality <= 7.0 != 6.0</code>
+     *
+     * @return String form of the range
+     */
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (never) {
+            return property.getName() + " (never)";
+        }
+        if (bounded && low == high && lowInclusive && highInclusive) {
+            text.append(property.getName()).append(" = ").append(low);
+        }
+        else {
+            if (low != Double.NEGATIVE_INFINITY) {
+                text.append(low).append(lowInclusive ? " <= " : " < ");
+            }
+            text.append(property.getName());
+            if (high != Double.POSITIVE_INFINITY) {
+                text.append(highInclusive ? " <= " : " < ").append(high);
+            }
+        }
+        for (double value : excluded) {
+            text.append(" != ").append(value);
+        }
+        return text.toString();
+    }
+
+    // Whether a value lies between the bounds of the interval
+    private boolean inInterval(double value) {
+        boolean aboveLow = lowInclusive ? value >= low : value > low;
+        boolean belowHigh = highInclusive ? value <= high : value < high;
+        return aboveLow && belowHigh;
+    }
+
+    private QueryCondition condition(QueryOperator operator, double value) {
+        return new QueryCondition(property, operator.getSymbol(), value);
+    }
+
+    // Tightens the lower bound to <code>value</code> if that leaves fewer values in the interval
+    private void raiseLow(double value, boolean inclusive) {
+        if (value > low || (value == low && !inclusive)) {
+            low = value;
+            lowInclusive = inclusive;
+        }
+    }
+
+    // Tightens the upper bound to <code>value</code> if that leaves fewer values in the interval
+    private void lowerHigh(double value, boolean inclusive) {
+        if (value < high || (value == high && !inclusive)) {
+            high = value;
+            highInclusive = inclusive;
+        }
+    }
+}
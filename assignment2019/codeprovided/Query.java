@@ -26,6 +26,18 @@ public class Query {
     List<WineSample> wineList = new ArrayList<>();
     List<QueryCondition> queryConditionList = new ArrayList<>();
     WineType wineType;
+    // for a query of conditions joined by "or" (see anyOf), the conditions of each alternative; null otherwise
+    List<List<QueryCondition>> alternatives;
+    // property to sort the results by instead of the conditions' properties (null for those), and its direction
+    WineProperty orderBy;
+    boolean descending;
+    // the most results to return, or -1 for all of them
+    int limit = -1;
+    // for an aggregate query (see setGroupBy), the property to group by (null for one group) and the values to compute; null otherwise
+    WineProperty groupBy;
+    List<Aggregate> aggregates;
+    // the conditions compiled ahead, one CompiledQuery per alternative (see PreparedQuery.bind); null to compile them when solved
+    List<CompiledQuery> compiled;
 
     // Constructor
     public Query(List<WineSample> wineList, List<QueryCondition> queryConditionList, WineType wineType) {
@@ -34,6 +46,143 @@ public class Query {
         this.wineType = wineType;
     }
 
+    /**
+     * anyOf method - creates a Query matching the samples that meet every condition of at least one of
+     * <code>alternatives</code>, e.g. <code>qual > 7 or alc > 13 and ph < 3</code>. Its queryConditionList
+     * holds all the conditions in order, and its results are sorted by them as for any other query.
+     *
+     * @param wineList the samples to query
+     * @param alternatives the conditions of each alternative
+     * @param wineType the type of the samples
+     * @return Query over the alternatives (a plain Query if there is only one)
+     */
+    public static Query anyOf(List<WineSample> wineList, List<List<QueryCondition>> alternatives, WineType wineType) {
+        List<QueryCondition> conditions = new ArrayList<>();
+        for (List<QueryCondition> alternative : alternatives) {
+            conditions.addAll(alternative);
+        }
+        Query query = new Query(wineList, conditions, wineType);
+        if (alternatives.size() > 1) {
+            query.alternatives = alternatives;
+        }
+        return query;
+    }
+
+    /**
+     * isAlternatives method - whether the query's conditions are alternatives joined by "or" (see anyOf),
+     * rather than all required at once
+     *
+     * @return true for a query made by anyOf from more than one alternative
+     */
+    public boolean isAlternatives() {
+        return alternatives != null;
+    }
+
+    /**
+     * Getter for the alternatives of the query
+     *
+     * @return List of the conditions of each alternative; just queryConditionList for a query without "or"
+     */
+    public List<List<QueryCondition>> getAlternatives() {
+        return alternatives != null ? alternatives : Collections.singletonList(queryConditionList);
+    }
+
+    /**
+     * Setter for the order of the results (<code>order by</code> in the query language)
+     *
+     * @param orderBy the property to sort by, or null to sort by the conditions' properties as usual
+     * @param descending whether the highest values come first
+     */
+    public void setOrderBy(WineProperty orderBy, boolean descending) {
+        this.orderBy = orderBy;
+        this.descending = descending;
+    }
+
+    /**
+     * Getter for the property the results are sorted by
+     *
+     * @return WineProperty set by setOrderBy, or null if the results are sorted by the conditions' properties
+     */
+    public WineProperty getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * isDescending method - whether the results are sorted highest first
+     *
+     * @return true for <code>order by ... desc</code>
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Setter for the most results to return (<code>limit</code> in the query language)
+     *
+     * @param limit number of results, or -1 for all of them
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Getter for the most results to return
+     *
+     * @return number of results, or -1 for all of them
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Setter for the aggregates of the query (<code>group by ... compute ...</code> in the query language),
+     * making it an aggregate query answered by aggregateQuery
+     *
+     * @param groupBy the property whose values the matching samples are grouped by, or null for a single group
+     * @param aggregates the values to compute per group, or null for an ordinary query
+     */
+    public void setGroupBy(WineProperty groupBy, List<Aggregate> aggregates) {
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Getter for the property the matching samples are grouped by
+     *
+     * @return WineProperty set by setGroupBy, or null for a single group
+     */
+    public WineProperty getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * Getter for the values computed per group
+     *
+     * @return List of Aggregate set by setGroupBy, or null for an ordinary query
+     */
+    public List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * isAggregate method - whether the query computes aggregates (see aggregateQuery) rather than listing samples
+     *
+     * @return true once setGroupBy has been given aggregates
+     */
+    public boolean isAggregate() {
+        return aggregates != null;
+    }
+
+    /**
+     * isSimple method - whether the query is just conditions that must all be met, with results in the usual
+     * order and no limit: the queries QueryBatch shares a scan between
+     *
+     * @return true without "or", <code>order by</code>, <code>limit</code> or aggregates
+     */
+    public boolean isSimple() {
+        return alternatives == null && orderBy == null && limit < 0 && aggregates == null;
+    }
+
     /**
      * Getter for wineList (the list of WineSample objects of a Query object)
      *
@@ -86,6 +235,7 @@ public class Query {
      */
     public void setQueryConditionList(List<QueryCondition> queryConditionList) {
         this.queryConditionList = queryConditionList;
+        this.compiled = null;
     }
 
     /**
@@ -98,75 +248,184 @@ public class Query {
      * @return ArrayList of all wines which meet criteria
      */
     public List<WineSample> executeQuery(List<WineSample> wineList, WineProperty wineProperty, String propertyOperator, double propertyValue) {
-        List<WineSample> solvedWineList = new ArrayList<>();
-        for (WineSample w : wineList) {
-            switch (propertyOperator) {
-                case ">":
-                    if (w.getProperty(wineProperty) > propertyValue) 
-                    	solvedWineList.add(w);
-                    break;
-                case ">=":
-                    if (w.getProperty(wineProperty) >= propertyValue) 
-                    	solvedWineList.add(w);
-                    break;
-                case "<":
-                    if (w.getProperty(wineProperty) < propertyValue) 
-                    	solvedWineList.add(w);
-                    break;
-                case "<=":
-                    if (w.getProperty(wineProperty) <= propertyValue) 
-                    	solvedWineList.add(w);
-                    break;
-                case "=":
-                    if (w.getProperty(wineProperty) == propertyValue) 
-                    	solvedWineList.add(w);
-                    break;
-                case "!=":
-                    if (w.getProperty(wineProperty) != propertyValue) 
-                    	solvedWineList.add(w);
-                    break;
-                default:
-                    break;
-            }
+        return QueryEngine.filter(wineList, Collections.singletonList(new QueryCondition(wineProperty, propertyOperator, propertyValue)));
+    }
+
+    /**
+     * compile method - turns the query conditions into a single predicate (see CompiledQuery), done once per
+     * solveQuery so that nothing is interpreted per sample (or not at all, for a query bound from a PreparedQuery)
+     *
+     * @return CompiledQuery for the current conditions
+     */
+    public CompiledQuery compile() {
+        if (compiled != null && alternatives == null) {
+            return compiled.get(0);
         }
-        return solvedWineList;
-}
+        return new CompiledQuery(queryConditionList);
+    }
+
+    // Each alternative compiled on its own
+    private List<CompiledQuery> compileAlternatives() {
+        if (compiled != null) {
+            return compiled;
+        }
+        List<CompiledQuery> compiled = new ArrayList<>();
+        for (List<QueryCondition> alternative : alternatives) {
+            compiled.add(new CompiledQuery(alternative));
+        }
+        return compiled;
+    }
 
     /**
-     * solveQuery method - Creates a TreeSet sorted by the relevant property which WineSample objects are being assessed on and
-     * then copies the wineList into it. The executeQuery method is then called on each WineSample to be assessed with all valid
-     * wines being added to an ArrayList which is then returned.
+     * countQuery method - the number of wine samples meeting every condition of the query, counted
+     * without building the list of them (see QueryEngine.count and countAny)
+     *
+     * @return number of matching wine samples
+     */
+    public int countQuery() {
+        if (queryConditionList.isEmpty()) {
+            return 0;
+        }
+        int count = alternatives != null
+            ? QueryEngine.countAny(wineList, compileAlternatives())
+            : QueryEngine.count(wineList, compile());
+        return limit < 0 ? count : Math.min(count, limit);
+    }
+
+    /**
+     * solveQuery method - Finds the wine samples meeting every condition of the query in a single pass (see QueryEngine),
+     * then sorts them by the conditions' properties, the last condition's property first, as the results have always been listed.
+     * A query with an order (see setOrderBy) is sorted by that property instead, and a query with a limit (see setLimit)
+     * keeps only its first results, finding them with a heap of that size rather than sorting every match.
      * The method also updates the Query wineList to contain the solved query results.
      *
      * @return ArrayList of all valid wine samples
      */
     public List<WineSample> solveQuery() {
-        List<WineSample> solvedWineList = new ArrayList<>();
+        return solveQuery(true);
+    }
 
-        for (QueryCondition subQuery : queryConditionList)
-        {
-            double value = subQuery.getValue();
-            String operator = subQuery.getOperator();
-            WineProperty wineProperty = subQuery.getWineProperty();
-            List<WineSample> auxWineList = new ArrayList<>();
+    /**
+     * solveQuery method - as above, but leaves the results in the order of the wine list (e.g. by id) unless
+     * <code>ordered</code> is set, saving the sort when the order does not matter
+     *
+     * @param ordered whether to sort the results by the conditions' properties
+     * @return ArrayList of all valid wine samples
+     */
+    public List<WineSample> solveQuery(boolean ordered) {
+        List<WineSample> solvedWineList = solve(ordered);
+        this.setWineList(solvedWineList);
+        return solvedWineList;
+    }
 
-            Comparator<WineSample> comparator = new PropertyComparator(wineProperty);
-            SortedSet<WineSample> wineSet = new TreeSet<>(comparator);
+    // The results of solveQuery, leaving wineList as it is
+    private List<WineSample> solve(boolean ordered) {
+        if (queryConditionList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<WineSample> solvedWineList;
+        if (ordered && limit >= 0) {
+            // only the first few results are wanted, so only they are ever held (see QueryEngine.topAny)
+            List<CompiledQuery> compiled = alternatives != null ? compileAlternatives() : Collections.singletonList(compile());
+            solvedWineList = orderBy != null
+                ? QueryEngine.topAny(wineList, compiled, orderBy, descending, limit)
+                : QueryEngine.topAny(wineList, compiled, queryConditionList, limit);
+        }
+        else {
+            solvedWineList = alternatives != null
+                ? QueryEngine.filterAny(wineList, compileAlternatives())
+                : QueryEngine.filter(wineList, compile());
+            if (ordered && orderBy != null) {
+                QueryEngine.orderBy(solvedWineList, orderBy, descending);
+            }
+            else if (ordered) {
+                QueryEngine.order(solvedWineList, queryConditionList);
+            }
+            if (limit >= 0 && solvedWineList.size() > limit) {
+                solvedWineList = new ArrayList<>(solvedWineList.subList(0, limit));
+            }
+        }
+        return solvedWineList;
+    }
+
+    /**
+     * aggregateQuery method - groups the wine samples meeting the query by the property set by setGroupBy and
+     * computes its aggregates per group, in one pass over the wine list that never makes a list of the matching
+     * samples (see QueryEngine.aggregate). Unlike solveQuery, a query without conditions aggregates every
+     * sample, and the wine list is left as it is.
+     *
+     * @return AggregateResult of the groups, in ascending order of the grouped property
+     * @throws IllegalStateException if the query has no aggregates
+     */
+    public AggregateResult aggregateQuery() {
+        if (aggregates == null) {
+            throw new IllegalStateException("Query has no aggregates to compute");
+        }
+        List<CompiledQuery> compiled = alternatives != null ? compileAlternatives() : Collections.singletonList(compile());
+        return QueryEngine.aggregate(wineList, compiled, groupBy, aggregates);
+    }
 
-            wineSet.addAll(wineList);
-            auxWineList.addAll(wineSet);
-            solvedWineList = executeQuery(auxWineList, wineProperty, operator, value);
-            this.setWineList(solvedWineList);
+    /**
+     * cursor method - the results solveQuery would return, in the same order, handed out as they are asked
+     * for (see QueryCursor) rather than gathered into a List first, so that reading the first few results
+     * costs little however many samples match. Unlike solveQuery, the wine list is left as it is.
+     *
+     * @return QueryCursor over the results
+     */
+    public QueryCursor cursor() {
+        return cursor(true);
+    }
 
+    /**
+     * cursor method - as above, but in the order of the wine list (e.g. by id) unless <code>ordered</code> is set
+     *
+     * @param ordered whether to sort the results as solveQuery does
+     * @return QueryCursor over the results
+     */
+    public QueryCursor cursor(boolean ordered) {
+        if (queryConditionList.isEmpty()) {
+            return QueryCursor.of(new ArrayList<>());
         }
-        return solvedWineList;
+        List<WineSampleRack> racks = QueryEngine.racksOf(wineList);
+        if (racks == null) {
+            return QueryCursor.of(solve(ordered));
+        }
+        List<CompiledQuery> compiled = alternatives != null ? compileAlternatives() : Collections.singletonList(compile());
+        List<QueryCursor> cursors = new ArrayList<>(racks.size());
+        QueryCursor cursor;
+        if (!ordered) {
+            for (WineSampleRack rack : racks) {
+                cursors.add(new QueryCursor.RowCursor(rack, compiled));
+            }
+            cursor = QueryCursor.concat(cursors);
+        }
+        else {
+            WineProperty property = orderBy != null ? orderBy : queryConditionList.get(queryConditionList.size() - 1).getWineProperty();
+            Comparator<WineSample> order;
+            Comparator<WineSample> tieBreak = null;
+            if (orderBy != null) {
+                int ordinal = property.ordinal();
+                Comparator<WineSample> ascending = (a, b) -> Double.compare(a.getProperty(ordinal), b.getProperty(ordinal));
+                order = descending ? ascending.reversed() : ascending;
+            }
+            else {
+                int last = queryConditionList.size() - 1;
+                tieBreak = last == 0 ? null : QueryEngine.orderComparator(queryConditionList, last);
+                order = QueryEngine.orderComparator(queryConditionList, last + 1);
+            }
+            for (WineSampleRack rack : racks) {
+                cursors.add(new QueryCursor.IndexCursor(rack, compiled, property, descending && orderBy != null, tieBreak));
+            }
+            cursor = QueryCursor.merge(cursors, order);
+        }
+        return limit < 0 ? cursor : cursor.limit(limit);
     }
 }
 
 /**
  * PropertyComparator.java
  *
- * Comparator class necessary to sort the contents in the TreeSet built by solveQuery in Query object 
+ * Comparator class to sort WineSample objects into a TreeSet by one property (equal values are kept in insertion order)
  *
  * @version 1.0  06/04/2019
  *
@@ -175,16 +434,19 @@ public class Query {
 class PropertyComparator implements Comparator<WineSample>
 {
     WineProperty propertyToCompare;
+    // ordinal of propertyToCompare, so that compare reads values by index rather than through a switch
+    int ordinalToCompare;
 
     public PropertyComparator(WineProperty wineProperty)
     {
         propertyToCompare = wineProperty;
+        ordinalToCompare = wineProperty.ordinal();
     }
 
     public int compare(WineSample a, WineSample b)
     {
-        double propA = a.getProperty(propertyToCompare);
-        double propB = b.getProperty(propertyToCompare);
+        double propA = a.getProperty(ordinalToCompare);
+        double propB = b.getProperty(ordinalToCompare);
 
         if (propA > propB) return 1;
         if (propA < propB) return -1;
@@ -0,0 +1,200 @@
+package assignment2019.codeprovided;
+
+import java.util.*;
+
+/**
+ * QueryBatch.java
+ *
+ * Solves many queries together, e.g. every line of a query file, with the same results (in the
+ * same order) as Query.solveQuery gives each of them on its own. Queries asking the same thing of
+ * the same wine list (see QueryCache.key) are solved once. The rest are grouped by the racks
+ * behind their lists, so a query on ALL wines joins both the RED and the WHITE group, and each
+ * is planned per rack as usual (see QueryPlanner). Plans answered without a scan (EMPTY, ALL,
+ * INDEX and BITMAP) run on their own; all the SCAN plans over a rack share a single pass over it.
+ * A block of rows at a time, each of those queries ANDs its ranges into a selection mask for the
+ * block while the block's columns are still in cache, and the set bits are routed into that
+ * query's own buffer of rows. The rack is read from memory once however many queries there are,
+ * and a large rack is split into segments across cores as for a single query (see RackSegments).
+ * Queries over lists that are not racks, and queries with "or", an order or a limit (see
+ * Query.isSimple), are solved one by one.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class QueryBatch {
+
+    /**
+     * solve method - solves every query, as Query.solveQuery does (so each query's wine list is
+     * also replaced by its results)
+     *
+     * @param queries the queries to solve
+     * @return List of each query's results, in the order of <code>queries</code>; queries asking
+     * the same thing share one read-only List
+     */
+    public static List<List<WineSample>> solve(List<Query> queries) {
+        List<List<WineSample>> results = new ArrayList<>(Collections.nCopies(queries.size(), null));
+        // one Pending per distinct query, by wine list and canonical form, in order of first appearance
+        Map<List<WineSample>, Map<QueryCache.Key, Pending>> distinct = new IdentityHashMap<>();
+        List<Pending> pending = new ArrayList<>();
+        for (int q = 0; q < queries.size(); q++) {
+            Query query = queries.get(q);
+            List<QueryCondition> conditions = query.getQueryConditionList();
+            List<WineSampleRack> racks = QueryEngine.racksOf(query.getWineList());
+            if (conditions.isEmpty() || racks == null || !query.isSimple()) {
+                results.set(q, query.solveQuery());
+                continue;
+            }
+            Pending solving = distinct.computeIfAbsent(query.getWineList(), list -> new HashMap<>())
+                .computeIfAbsent(QueryCache.key(query.getWineType(), conditions), key -> {
+                    Pending next = new Pending(query, racks);
+                    pending.add(next);
+                    return next;
+                });
+            solving.positions.add(q);
+        }
+
+        // every rack any pending query reads, each scanned once for all of them
+        Map<WineSampleRack, List<Pending>> readers = new IdentityHashMap<>();
+        for (Pending solving : pending) {
+            for (WineSampleRack rack : solving.racks) {
+                readers.computeIfAbsent(rack, reader -> new ArrayList<>()).add(solving);
+            }
+        }
+        for (Map.Entry<WineSampleRack, List<Pending>> entry : readers.entrySet()) {
+            solveRack(entry.getKey(), entry.getValue());
+        }
+
+        for (Pending solving : pending) {
+            List<WineSample> solved = solving.results();
+            if (solving.positions.size() > 1) {
+                solved = Collections.unmodifiableList(solved);
+            }
+            for (int q : solving.positions) {
+                queries.get(q).setWineList(solved);
+                results.set(q, solved);
+            }
+        }
+        return results;
+    }
+
+    // Finds the rows of one rack matching each query reading it, sharing one scan between all the SCAN plans
+    private static void solveRack(WineSampleRack rack, List<Pending> readers) {
+        List<Pending> scanning = new ArrayList<>();
+        List<QueryPlan> scans = new ArrayList<>();
+        for (Pending solving : readers) {
+            QueryPlan plan = QueryPlanner.plan(rack, solving.compiled);
+            if (plan.getAccessPath() == QueryPlan.AccessPath.SCAN && QueryEngine.isVectorized()) {
+                scanning.add(solving);
+                scans.add(plan);
+            }
+            else {
+                RowBuffer rows = new RowBuffer();
+                plan.forEachRow(rows::add);
+                solving.rows.put(rack, rows.toArray());
+            }
+        }
+        if (scans.isEmpty()) {
+            return;
+        }
+        QueryPlan[] plans = scans.toArray(new QueryPlan[0]);
+        List<int[][]> segments = RackSegments.map(0, rack.size(), (from, to) -> scan(plans, from, to));
+        for (int p = 0; p < plans.length; p++) {
+            int length = 0;
+            for (int[][] segment : segments) {
+                length += segment[p].length;
+            }
+            int[] rows = new int[length];
+            int at = 0;
+            for (int[][] segment : segments) {
+                System.arraycopy(segment[p], 0, rows, at, segment[p].length);
+                at += segment[p].length;
+            }
+            scanning.get(p).rows.put(rack, rows);
+        }
+    }
+
+    // One pass over rows [start, end) for every plan: per block, each plan's mask is filled and its set bits routed to its buffer
+    private static int[][] scan(QueryPlan[] plans, int start, int end) {
+        RowBuffer[] buffers = new RowBuffer[plans.length];
+        for (int p = 0; p < plans.length; p++) {
+            buffers[p] = new RowBuffer();
+        }
+        long[] words = new long[QueryPlan.BLOCK_ROWS >>> 6];
+        for (int from = start; from < end; from += QueryPlan.BLOCK_ROWS) {
+            int to = Math.min(end, from + QueryPlan.BLOCK_ROWS);
+            int wordCount = (to - from + 63) >>> 6;
+            for (int p = 0; p < plans.length; p++) {
+                if (!plans[p].select(from, to, words)) {
+                    continue;
+                }
+                RowBuffer rows = buffers[p];
+                for (int w = 0; w < wordCount; w++) {
+                    for (long word = words[w]; word != 0; word &= word - 1) {
+                        rows.add(from + (w << 6) + Long.numberOfTrailingZeros(word));
+                    }
+                }
+            }
+        }
+        int[][] rows = new int[plans.length][];
+        for (int p = 0; p < plans.length; p++) {
+            rows[p] = buffers[p].toArray();
+        }
+        return rows;
+    }
+
+    /**
+     * Pending.java
+     *
+     * One distinct query of the batch: the first Query asking it, the positions of all those that
+     * do, and the matching rows found so far in each of its racks.
+     */
+    private static class Pending {
+
+        private final Query query;
+        private final CompiledQuery compiled;
+        private final List<WineSampleRack> racks;
+        private final List<Integer> positions = new ArrayList<>();
+        private final Map<WineSampleRack, int[]> rows = new IdentityHashMap<>();
+
+        Pending(Query query, List<WineSampleRack> racks) {
+            this.query = query;
+            this.compiled = query.compile();
+            this.racks = racks;
+        }
+
+        // The matching samples in list order, then sorted as Query.solveQuery sorts them
+        List<WineSample> results() {
+            List<WineSample> results = new ArrayList<>();
+            for (WineSampleRack rack : racks) {
+                for (int row : rows.get(rack)) {
+                    results.add(rack.get(row));
+                }
+            }
+            QueryEngine.order(results, query.getQueryConditionList());
+            return results;
+        }
+    }
+
+    /**
+     * RowBuffer.java
+     *
+     * Growable array of row numbers.
+     */
+    private static class RowBuffer {
+
+        private int[] rows = new int[16];
+        private int count;
+
+        void add(int row) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, count);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package assignment2019.codeprovided;
+
+import java.util.*;
+
+/**
+ * QueryCache.java
+ *
+ * Bounded cache of solved queries, so that a query asked again (from the query file or the
+ * browser's filters) is a hash lookup instead of a plan and a scan. Entries are keyed by the
+ * wine type and a canonical form of the query: its normalised conditions (see CompiledQuery) in
+ * property order, plus the properties its results are sorted by, so that the same conditions
+ * written in another order or with redundant parts share an entry whenever their results do.
+ * A query with "or" is keyed by each of its alternatives in turn, and one with an order or a
+ * limit by those as well (see key(Query)); aggregate queries are not cached.
+ * A result is stored as an int[] of positions in the racks behind the wine list, and handed
+ * back as a read-only List over those positions, so a hit copies nothing.
+ * Each entry remembers the version of every rack it was computed from (see
+ * WineSampleRack.getVersion), and is dropped when any of them has changed or the wine list has
+ * been replaced; the cellar also clears the cache whenever it reloads or extends a rack.
+ * The least recently used entries are evicted once there are more than maxEntries of them, or
+ * they hold more than maxRows results between them.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class QueryCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 64;
+    static final int DEFAULT_MAX_ROWS = 1 << 20;
+
+    // Instance variables
+    private final int maxEntries;
+    private final int maxRows;
+    // in access order, so that the eldest entry is the least recently used
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long storedRows;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Constructors
+    public QueryCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ROWS);
+    }
+
+    public QueryCache(int maxEntries, int maxRows) {
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * get method - the cached results of a query, if they are still up to date
+     *
+     * @param wineType the wine type queried
+     * @param wineList the list the query runs over
+     * @param conditions the query's conditions
+     * @return read-only List of the results, sorted as by Query.solveQuery, or null on a miss
+     */
+    public List<WineSample> get(WineType wineType, List<WineSample> wineList, List<QueryCondition> conditions) {
+        return get(key(wineType, conditions), wineList);
+    }
+
+    /**
+     * get method - the cached results of a query over its wine list, if they are still up to date
+     *
+     * @param query the query, which may have alternatives, an order or a limit
+     * @return read-only List of the results, as from Query.solveQuery, or null on a miss
+     */
+    public List<WineSample> get(Query query) {
+        return get(key(query), query.getWineList());
+    }
+
+    private synchronized List<WineSample> get(Key key, List<WineSample> wineList) {
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isCurrent(wineList)) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ResultList(entry);
+    }
+
+    /**
+     * put method - stores the results of a query, if they come from racks and fit in the cache
+     *
+     * @param wineType the wine type queried
+     * @param wineList the list the query ran over
+     * @param conditions the query's conditions
+     * @param results the results, as returned by Query.solveQuery
+     */
+    public void put(WineType wineType, List<WineSample> wineList, List<QueryCondition> conditions, List<WineSample> results) {
+        put(key(wineType, conditions), wineList, results);
+    }
+
+    /**
+     * put method - stores the results of a query, if they come from racks and fit in the cache
+     *
+     * @param query the query, which may have alternatives, an order or a limit
+     * @param wineList the list the query ran over (solving it replaces the query's own)
+     * @param results the results, as returned by Query.solveQuery
+     */
+    public void put(Query query, List<WineSample> wineList, List<WineSample> results) {
+        put(key(query), wineList, results);
+    }
+
+    private synchronized void put(Key key, List<WineSample> wineList, List<WineSample> results) {
+        List<WineSampleRack> racks = QueryEngine.racksOf(wineList);
+        if (racks == null || results.size() > maxRows) {
+            return;
+        }
+        Entry entry = new Entry(wineList, racks, results);
+        if (entry.positions == null) {
+            return; // a result that is not a row of one of the racks cannot be stored as a position
+        }
+        remove(key);
+        entries.put(key, entry);
+        storedRows += entry.positions.length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || storedRows > maxRows) {
+            storedRows -= eldest.next().positions.length;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * clear method - drops every entry, e.g. once a rack has been reloaded. The counts of hits,
+     * misses and evictions carry on.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        storedRows = 0;
+    }
+
+    // Getters for the cache's contents and metrics
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHitCount() { return hits; }
+    public synchronized long getMissCount() { return misses; }
+    public synchronized long getEvictionCount() { return evictions; }
+
+    /**
+     * getHitRate method - the share of lookups answered from the cache
+     *
+     * @return fraction between 0 and 1, or 0 before any lookup
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * toString method - a one-line summary of the cache, e.g.
+     * <code>QueryCache: 12 entries, 3104 rows, 80% hits (40 of 50 lookups), 2 evicted</code>
+     *
+     * @return String form of the cache's metrics
+     */
+    public synchronized String toString() {
+        return "QueryCache: " + entries.size() + " entries, " + storedRows + " rows, "
+            + Math.round(getHitRate() * 100) + "% hits (" + hits + " of " + (hits + misses) + " lookups), "
+            + evictions + " evicted";
+    }
+
+    // Canonical form of a query: wine type, the conditions folded per property (see CompiledQuery), in
+    // property order, then the properties the results are sorted by
+    static Key key(WineType wineType, List<QueryCondition> conditions) {
+        return key(wineType, Collections.singletonList(conditions), conditions, null, false, -1);
+    }
+
+    // Canonical form of any query but an aggregate one: as above for each alternative in turn, then
+    // the order and the limit
+    static Key key(Query query) {
+        return key(query.getWineType(), query.getAlternatives(), query.getQueryConditionList(),
+            query.getOrderBy(), query.isDescending(), query.getLimit());
+    }
+
+    private static Key key(WineType wineType, List<List<QueryCondition>> alternatives, List<QueryCondition> conditions,
+                           WineProperty orderBy, boolean descending, int limit) {
+        PropertyRange[][] folded = new PropertyRange[alternatives.size()][];
+        int length = 5 + conditions.size() + alternatives.size();
+        boolean matchesNone = true;
+        for (int a = 0; a < folded.length; a++) {
+            folded[a] = CompiledQuery.fold(alternatives.get(a));
+            for (PropertyRange range : folded[a]) {
+                if (range.isEmpty()) {
+                    folded[a] = null; // an alternative that can match nothing adds nothing to the results
+                    break;
+                }
+                length += 4 + range.getExcluded().length;
+            }
+            matchesNone &= folded[a] == null;
+        }
+        if (matchesNone) {
+            // every query that can match nothing has the same results
+            return new Key(new long[] {wineType.ordinal(), -1});
+        }
+        long[] words = new long[length];
+        int w = 0;
+        words[w++] = wineType.ordinal();
+        for (PropertyRange[] ranges : folded) {
+            if (ranges == null) {
+                words[w++] = -3;
+                continue;
+            }
+            Arrays.sort(ranges, Comparator.comparingInt((PropertyRange range) -> range.getWineProperty().ordinal()));
+            for (PropertyRange range : ranges) {
+                double[] excluded = range.getExcluded();
+                Arrays.sort(excluded);
+                words[w++] = ((long) range.getWineProperty().ordinal() << 32) | ((long) excluded.length << 3)
+                    | (range.isBounded() ? 4 : 0) | (range.isLowInclusive() ? 2 : 0) | (range.isHighInclusive() ? 1 : 0);
+                words[w++] = Double.doubleToLongBits(range.getLow());
+                words[w++] = Double.doubleToLongBits(range.getHigh());
+                for (double value : excluded) {
+                    words[w++] = Double.doubleToLongBits(value);
+                }
+            }
+            if (folded.length > 1) {
+                words[w++] = -2;
+            }
+        }
+        // results are sorted by the last condition's property first (see QueryEngine.order); a repeated
+        // property adds nothing after its first appearance in that order
+        words[w++] = -1;
+        int seen = 0;
+        for (int c = conditions.size() - 1; c >= 0; c--) {
+            int ordinal = conditions.get(c).getWineProperty().ordinal();
+            if ((seen & (1 << ordinal)) == 0) {
+                seen |= 1 << ordinal;
+                words[w++] = ordinal;
+            }
+        }
+        if (orderBy != null || limit >= 0) {
+            words[w++] = -4;
+            words[w++] = orderBy == null ? -1 : orderBy.ordinal() * 2 + (descending ? 1 : 0);
+            words[w++] = limit;
+        }
+        return new Key(Arrays.copyOf(words, w));
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            storedRows -= entry.positions.length;
+        }
+    }
+
+    /**
+     * Key.java
+     *
+     * A query's canonical form, as words compared and hashed as a whole.
+     */
+    static final class Key {
+
+        private final long[] words;
+        private final int hash;
+
+        Key(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(words, ((Key) other).words);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Entry.java
+     *
+     * The results of one query, as positions in the racks laid back to back, with the racks' versions when solved.
+     */
+    private static class Entry {
+
+        private final List<WineSample> wineList;
+        private final WineSampleRack[] racks;
+        private final int[] versions;
+        // position of each rack's first row, and one past the end of the last
+        private final int[] offsets;
+        private final int[] positions;
+
+        Entry(List<WineSample> wineList, List<WineSampleRack> rackList, List<WineSample> results) {
+            this.wineList = wineList;
+            racks = rackList.toArray(new WineSampleRack[0]);
+            versions = new int[racks.length];
+            offsets = new int[racks.length + 1];
+            for (int r = 0; r < racks.length; r++) {
+                versions[r] = racks[r].getVersion();
+                offsets[r + 1] = offsets[r] + racks[r].size();
+            }
+            positions = positions(results);
+        }
+
+        // Whether the entry was solved over this very list, and none of its racks has changed since
+        boolean isCurrent(List<WineSample> wineList) {
+            if (wineList != this.wineList) {
+                return false;
+            }
+            for (int r = 0; r < racks.length; r++) {
+                if (racks[r].getVersion() != versions[r]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        WineSample get(int index) {
+            int position = positions[index];
+            int r = 0;
+            while (position >= offsets[r + 1]) r++;
+            return racks[r].get(position - offsets[r]);
+        }
+
+        // Position of every result across the racks, or null if one of them is not a row of a rack
+        private int[] positions(List<WineSample> results) {
+            int[] positions = new int[results.size()];
+            int i = 0;
+            for (WineSample wine : results) {
+                if (!(wine instanceof RackedWineSample)) {
+                    return null;
+                }
+                RackedWineSample racked = (RackedWineSample) wine;
+                int r = 0;
+                while (r < racks.length && racks[r] != racked.getRack()) r++;
+                if (r == racks.length) {
+                    return null;
+                }
+                positions[i++] = offsets[r] + racked.getRow();
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * ResultList.java
+     *
+     * Read-only List of the results held by an Entry, handing out the racks' own flyweights.
+     */
+    private static class ResultList extends AbstractList<WineSample> implements RandomAccess {
+
+        private final Entry entry;
+
+        ResultList(Entry entry) {
+            this.entry = entry;
+        }
+
+        public WineSample get(int index) {
+            if (index < 0 || index >= entry.positions.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + entry.positions.length);
+            }
+            return entry.get(index);
+        }
+
+        public int size() {
+            return entry.positions.length;
+        }
+    }
+}
@@ -22,12 +22,15 @@ public class QueryCondition
     // Instance variables
     WineProperty wineProperty;
     String operator;
+    // operator, looked up once (null if it is not one QueryOperator knows)
+    QueryOperator queryOperator;
     double value;
 
     // Constructor
     public QueryCondition(WineProperty wineProperty, String operator, double value) {
         this.wineProperty = wineProperty;
         this.operator = operator;
+        this.queryOperator = QueryOperator.fromSymbol(operator);
         this.value = value;
     }
 
@@ -47,6 +50,11 @@ public class QueryCondition
 
     public void setOperator(String operator) {
         this.operator = operator;
+        this.queryOperator = QueryOperator.fromSymbol(operator);
+    }
+
+    public QueryOperator getQueryOperator() {
+        return queryOperator;
     }
 
     public double getValue() {
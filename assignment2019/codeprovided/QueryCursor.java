@@ -0,0 +1,345 @@
+package assignment2019.codeprovided;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * QueryCursor.java
+ *
+ * Results of a query handed out one at a time as they are asked for (see Query.cursor), rather
+ * than gathered into a List first, so that showing the first page of a query matching millions
+ * of samples costs about as much as one matching a few, and stopping early saves the rest of the
+ * work. A cursor is an Iterator of WineSample, can hand out a page at a time (see nextPage), and
+ * can be turned into a Stream.
+ * Over racks, results in list order come from a block of rows at a time, tested into a selection
+ * mask as by a scan (see QueryPlan.select), so only one block's mask is held. Results in sorted
+ * order are read off the rack's sorted PropertyIndex for the property sorted by, one run of equal
+ * values at a time, and the racks behind a view are merged. A run is handed out straight off the
+ * index, as it is already in row order; only a run that has to be sorted first (by the remaining
+ * properties) is held, so a cursor holds as many rows as the longest such run at most. A list that is not made of racks is solved in full first.
+ * Like a QueryPlan, a cursor reads the racks as they are, so must not outlive a change to them.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public abstract class QueryCursor implements Iterator<WineSample> {
+
+    // the next result, once fetched
+    private WineSample next;
+    private boolean fetched;
+
+    // Constructor (cursors are made by Query.cursor and the factory methods below)
+    QueryCursor() {
+    }
+
+    // The next result, or null once there are no more
+    abstract WineSample fetch();
+
+    public boolean hasNext() {
+        if (!fetched) {
+            next = fetch();
+            fetched = true;
+        }
+        return next != null;
+    }
+
+    public WineSample next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        return next;
+    }
+
+    /**
+     * nextPage method - the next results, up to a page of them
+     *
+     * @param size most results to return
+     * @return List of the next results; empty once there are none left
+     */
+    public List<WineSample> nextPage(int size) {
+        List<WineSample> page = new ArrayList<>(Math.min(size, 1024));
+        while (page.size() < size && hasNext()) {
+            page.add(next());
+        }
+        return page;
+    }
+
+    /**
+     * stream method - the remaining results as a sequential, ordered Stream, pulling from the cursor
+     * only as far as the stream is consumed
+     *
+     * @return Stream of WineSample
+     */
+    public Stream<WineSample> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * of method - a cursor over the samples of a list, in list order
+     *
+     * @param wineList the samples to hand out
+     * @return QueryCursor over the list
+     */
+    public static QueryCursor of(List<WineSample> wineList) {
+        Iterator<WineSample> samples = wineList.iterator();
+        return new QueryCursor() {
+            WineSample fetch() {
+                return samples.hasNext() ? samples.next() : null;
+            }
+        };
+    }
+
+    // A cursor handing out at most <code>limit</code> results of this one
+    QueryCursor limit(int limit) {
+        QueryCursor source = this;
+        return new QueryCursor() {
+            private int remaining = limit;
+
+            WineSample fetch() {
+                if (remaining <= 0 || !source.hasNext()) {
+                    return null;
+                }
+                remaining--;
+                return source.next();
+            }
+        };
+    }
+
+    // The results of each cursor in turn
+    static QueryCursor concat(List<QueryCursor> cursors) {
+        Iterator<QueryCursor> remaining = cursors.iterator();
+        return new QueryCursor() {
+            private QueryCursor current;
+
+            WineSample fetch() {
+                while (current == null || !current.hasNext()) {
+                    if (!remaining.hasNext()) {
+                        return null;
+                    }
+                    current = remaining.next();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    // The results of cursors each sorted by <code>order</code>, merged; ties go to the earlier cursor, as in a stable sort
+    static QueryCursor merge(List<QueryCursor> cursors, Comparator<WineSample> order) {
+        if (cursors.size() == 1) {
+            return cursors.get(0);
+        }
+        QueryCursor[] sources = cursors.toArray(new QueryCursor[0]);
+        WineSample[] heads = new WineSample[sources.length];
+        return new QueryCursor() {
+            WineSample fetch() {
+                int best = -1;
+                for (int c = 0; c < sources.length; c++) {
+                    if (heads[c] == null && sources[c].hasNext()) {
+                        heads[c] = sources[c].next();
+                    }
+                    if (heads[c] != null && (best < 0 || order.compare(heads[c], heads[best]) < 0)) {
+                        best = c;
+                    }
+                }
+                if (best < 0) {
+                    return null;
+                }
+                WineSample sample = heads[best];
+                heads[best] = null;
+                return sample;
+            }
+        };
+    }
+
+    /**
+     * RowCursor.java
+     *
+     * The rows of a rack meeting any of the plans, in row order, a block of rows at a time.
+     */
+    static class RowCursor extends QueryCursor {
+
+        private final WineSampleRack rack;
+        private final QueryPlan[] plans;
+        private final long[] words = new long[QueryPlan.BLOCK_ROWS >>> 6];
+        private final long[] block = new long[QueryPlan.BLOCK_ROWS >>> 6];
+        // first row of the current block, its number of mask words, the next of them to read, and what is left of the last read
+        private int from = -QueryPlan.BLOCK_ROWS;
+        private int wordCount;
+        private int word;
+        private long bits;
+
+        // One plan per alternative of the query, those that can match nothing left out
+        RowCursor(WineSampleRack rack, List<CompiledQuery> alternatives) {
+            this.rack = rack;
+            List<QueryPlan> plans = new ArrayList<>();
+            for (CompiledQuery query : alternatives) {
+                QueryPlan plan = QueryPlanner.plan(rack, query);
+                if (plan.getAccessPath() != QueryPlan.AccessPath.EMPTY) {
+                    plans.add(plan);
+                }
+            }
+            this.plans = plans.toArray(new QueryPlan[0]);
+        }
+
+        WineSample fetch() {
+            while (bits == 0) {
+                if (word < wordCount) {
+                    bits = words[word++];
+                    continue;
+                }
+                from += QueryPlan.BLOCK_ROWS;
+                if (plans.length == 0 || from >= rack.size()) {
+                    return null;
+                }
+                int to = Math.min(rack.size(), from + QueryPlan.BLOCK_ROWS);
+                fill(from, to);
+                wordCount = (to - from + 63) >>> 6;
+                word = 0;
+            }
+            int row = from + ((word - 1) << 6) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            return rack.get(row);
+        }
+
+        // The block's mask: the rows any plan selects
+        private void fill(int start, int end) {
+            Arrays.fill(words, 0);
+            for (QueryPlan plan : plans) {
+                if (plan.select(start, end, block)) {
+                    for (int w = 0, wordCount = (end - start + 63) >>> 6; w < wordCount; w++) {
+                        words[w] |= block[w];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * IndexCursor.java
+     *
+     * The rows of a rack meeting any of the queries, in the order of one property read off its
+     * sorted index, a run of equal values at a time; rows in a run go in row order, or sorted
+     * by <code>tieBreak</code> (stably) if there is one. A run in row order already is tested
+     * and handed out a position at a time; the others are gathered into <code>run</code> first.
+     */
+    static class IndexCursor extends QueryCursor {
+
+        private final WineSampleRack rack;
+        private final PropertyIndex index;
+        private final IntPredicate predicate;
+        private final boolean descending;
+        private final Comparator<WineSample> tieBreak;
+        // positions of the index still to read: [low, high)
+        private int low;
+        private int high;
+        // positions of the current run still to read, if it is handed out straight off the index
+        private int position;
+        private int runEnd;
+        // otherwise its matching rows, sorted, and the next of them to hand out
+        private boolean buffered;
+        private int[] run = new int[16];
+        private int runLength;
+        private int next;
+
+        // Values are equal as by Double.compare, as in the index (see TopKHeap)
+        IndexCursor(WineSampleRack rack, List<CompiledQuery> alternatives, WineProperty property, boolean descending,
+                    Comparator<WineSample> tieBreak) {
+            this.rack = rack;
+            this.index = rack.getIndex(property);
+            this.descending = descending;
+            this.tieBreak = tieBreak;
+            IntPredicate predicate = null;
+            for (CompiledQuery query : alternatives) {
+                IntPredicate next = query.rowPredicate(rack);
+                predicate = predicate == null ? next : predicate.or(next);
+            }
+            this.predicate = predicate == null ? row -> false : predicate;
+            low = 0;
+            high = index.size();
+            // a single query's range on the property narrows the part of the index to read
+            if (alternatives.size() == 1) {
+                for (PropertyRange range : alternatives.get(0).getRanges()) {
+                    int[] positions = range.getWineProperty() == property ? range.range(index) : null;
+                    if (positions != null) {
+                        low = positions[0];
+                        high = positions[1];
+                    }
+                }
+            }
+        }
+
+        WineSample fetch() {
+            while (true) {
+                if (buffered) {
+                    if (next < runLength) {
+                        return rack.get(run[next++]);
+                    }
+                }
+                else {
+                    while (position < runEnd) {
+                        int row = index.getRow(position++);
+                        if (predicate.test(row)) {
+                            return rack.get(row);
+                        }
+                    }
+                }
+                if (low >= high) {
+                    return null;
+                }
+                nextRun();
+            }
+        }
+
+        private boolean equal(double a, double b) {
+            return Double.compare(a, b) == 0;
+        }
+
+        // Moves on to the next run of equal values, from whichever end is first, gathering its matching rows if they need sorting
+        private void nextRun() {
+            int start, end;
+            if (descending) {
+                end = high;
+                start = end - 1;
+                while (start > low && equal(index.getValue(start - 1), index.getValue(end - 1))) start--;
+                high = start;
+            }
+            else {
+                start = low;
+                end = start + 1;
+                while (end < high && equal(index.getValue(end), index.getValue(start))) end++;
+                low = end;
+            }
+            buffered = tieBreak != null;
+            if (!buffered) {
+                position = start;
+                runEnd = end;
+                return;
+            }
+            runLength = 0;
+            next = 0;
+            for (int at = start; at < end; at++) {
+                int row = index.getRow(at);
+                if (predicate.test(row)) {
+                    if (runLength == run.length) {
+                        run = Arrays.copyOf(run, runLength * 2);
+                    }
+                    run[runLength++] = row;
+                }
+            }
+            if (runLength > 1) {
+                Integer[] rows = new Integer[runLength];
+                for (int i = 0; i < runLength; i++) {
+                    rows[i] = run[i];
+                }
+                Arrays.sort(rows, (a, b) -> tieBreak.compare(rack.get(a), rack.get(b)));
+                for (int i = 0; i < runLength; i++) {
+                    run[i] = rows[i];
+                }
+            }
+        }
+    }
+}
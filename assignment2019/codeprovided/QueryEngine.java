@@ -0,0 +1,548 @@
+package assignment2019.codeprovided;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * QueryEngine.java
+ *
+ * Evaluates the conditions of a query in a single pass over the samples, ANDing them together
+ * and stopping at the first condition a sample fails. The conditions are compiled into
+ * predicates first (see CompiledQuery), so nothing is looked up per sample. Samples held in
+ * racks are tested on the racks' columns; any other WineSample through its properties.
+ * Each rack is planned separately (see QueryPlanner): the conditions are folded per property,
+ * checked most selective first, and the rows found by a scan, a sorted PropertyIndex lookup or
+ * BitmapIndexes, whichever the rack's histograms suggest is cheapest. A scan runs a block of rows
+ * at a time, each range ANDing its bits into a selection mask, and a rack past the parallel
+ * threshold is scanned in segments across cores (see RackSegments). With bitmaps, count()
+ * answers without listing rows. A query whose conditions contradict each other (see
+ * CompiledQuery.isEmpty) is answered at once, without reading any sample.
+ * Aggregate queries (see aggregate) fold the matching rows into per-group accumulators as they
+ * are found, so they never list the samples at all.
+ * Filtering keeps the samples in list order. Sorting them is a separate step (see order) that
+ * callers only pay for when they want it, and then only over the samples that matched.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class QueryEngine {
+
+    // indexing lets filter answer conditions from sorted per-property indexes (see WineSampleRack.getIndex)
+    private static volatile boolean indexing = true;
+
+    // bitmaps lets filter and count combine conditions as per-property bitmaps rather than scanning rows
+    private static volatile boolean bitmaps = true;
+
+    // vectorized lets scans test a block of rows at a time into selection masks (see WineColumn.select)
+    private static volatile boolean vectorized = true;
+
+    // racks of at least this many rows are scanned in segments across cores (see RackSegments)
+    private static volatile int parallelThreshold = 1 << 16;
+
+    /**
+     * setIndexing method - switches index lookups (the default) on or off, e.g. to compare with full scans
+     *
+     * @param enabled true to use sorted indexes where they narrow the rows to test
+     */
+    public static void setIndexing(boolean enabled) {
+        indexing = enabled;
+    }
+
+    /**
+     * setBitmaps method - switches bitmap evaluation of conditions (the default) on or off
+     *
+     * @param enabled true to AND per-condition bitmaps where no narrow index lookup applies
+     */
+    public static void setBitmaps(boolean enabled) {
+        bitmaps = enabled;
+    }
+
+    /**
+     * setVectorized method - switches block-at-a-time scans (the default) on or off; off, a scan
+     * tests one row at a time with the compiled row predicates
+     *
+     * @param enabled true to scan blocks of rows into selection masks
+     */
+    public static void setVectorized(boolean enabled) {
+        vectorized = enabled;
+    }
+
+    /**
+     * setParallelThreshold method - sets the rack size from which scans, counts and the racks'
+     * statistics are split into segments run on the common ForkJoinPool. Results are the same
+     * either way, in the same order.
+     *
+     * @param rows smallest rack to split, or Integer.MAX_VALUE to keep everything on the calling thread
+     */
+    public static void setParallelThreshold(int rows) {
+        parallelThreshold = rows;
+    }
+
+    /**
+     * getParallelThreshold method - the rack size from which work is split across cores
+     *
+     * @return number of rows
+     */
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    // Whether the planner may use sorted indexes or bitmaps, and scans may use selection masks, as switched above
+    static boolean isIndexing() { return indexing; }
+    static boolean isBitmaps() { return bitmaps; }
+    static boolean isVectorized() { return vectorized; }
+
+    /**
+     * filter method - returns the samples of <code>wineList</code> meeting every condition, in list order
+     *
+     * @param wineList the samples to test
+     * @param conditions the conditions, all of which a sample must meet
+     * @return ArrayList of the matching samples
+     */
+    public static List<WineSample> filter(List<WineSample> wineList, List<QueryCondition> conditions) {
+        return filter(wineList, new CompiledQuery(conditions));
+    }
+
+    /**
+     * filter method - as above, for conditions already compiled
+     *
+     * @param wineList the samples to test
+     * @param query the compiled conditions
+     * @return ArrayList of the matching samples
+     */
+    public static List<WineSample> filter(List<WineSample> wineList, CompiledQuery query) {
+        List<WineSample> matches = new ArrayList<>();
+        if (query.isEmpty()) {
+            return matches; // the conditions contradict each other, so there is nothing to read
+        }
+        List<WineSampleRack> racks = racksOf(wineList);
+        if (racks != null) {
+            // straight down the rows of each rack, without going through the list at all
+            for (WineSampleRack rack : racks) {
+                QueryPlan plan = QueryPlanner.plan(rack, query);
+                if (plan.isSplittable() && RackSegments.isParallel(rack.size())) {
+                    // a large scan is split into segments across cores, their rows joined back up in order
+                    for (int[] rows : RackSegments.map(0, rack.size(), plan::rows)) {
+                        for (int row : rows) {
+                            matches.add(rack.get(row));
+                        }
+                    }
+                }
+                else {
+                    plan.forEachRow(row -> matches.add(rack.get(row)));
+                }
+            }
+            return matches;
+        }
+        Map<WineSampleRack, IntPredicate> rackPredicates = new IdentityHashMap<>();
+        for (WineSample wine : wineList) {
+            if (wine instanceof RackedWineSample) {
+                RackedWineSample racked = (RackedWineSample) wine;
+                IntPredicate predicate = rackPredicates.computeIfAbsent(racked.getRack(), query::rowPredicate);
+                if (predicate.test(racked.getRow())) {
+                    matches.add(wine);
+                }
+            }
+            else if (query.test(wine)) {
+                matches.add(wine);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * filterAny method - returns the samples of <code>wineList</code> meeting every condition of at least
+     * one of <code>alternatives</code>, in list order. Over racks, each alternative is planned and run as
+     * by filter, marking its rows, and the marked rows are then listed once each.
+     *
+     * @param wineList the samples to test
+     * @param alternatives the compiled conditions of each alternative
+     * @return ArrayList of the matching samples
+     */
+    public static List<WineSample> filterAny(List<WineSample> wineList, List<CompiledQuery> alternatives) {
+        List<WineSample> matches = new ArrayList<>();
+        List<WineSampleRack> racks = racksOf(wineList);
+        if (racks != null) {
+            for (WineSampleRack rack : racks) {
+                long[] marked = mark(rack, alternatives);
+                for (int w = 0; w < marked.length; w++) {
+                    for (long word = marked[w]; word != 0; word &= word - 1) {
+                        matches.add(rack.get((w << 6) + Long.numberOfTrailingZeros(word)));
+                    }
+                }
+            }
+            return matches;
+        }
+        for (WineSample wine : wineList) {
+            for (CompiledQuery query : alternatives) {
+                if (query.test(wine)) {
+                    matches.add(wine);
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * countAny method - the number of samples of <code>wineList</code> meeting every condition of at least
+     * one of <code>alternatives</code>. Over racks this is a popcount of the rows marked as by filterAny,
+     * without a list of the samples being made.
+     *
+     * @param wineList the samples to test
+     * @param alternatives the compiled conditions of each alternative
+     * @return number of matching samples
+     */
+    public static int countAny(List<WineSample> wineList, List<CompiledQuery> alternatives) {
+        int count = 0;
+        List<WineSampleRack> racks = racksOf(wineList);
+        if (racks != null) {
+            for (WineSampleRack rack : racks) {
+                for (long word : mark(rack, alternatives)) {
+                    count += Long.bitCount(word);
+                }
+            }
+            return count;
+        }
+        for (WineSample wine : wineList) {
+            for (CompiledQuery query : alternatives) {
+                if (query.test(wine)) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    // One bit per row of the rack, set for the rows meeting any of the alternatives
+    private static long[] mark(WineSampleRack rack, List<CompiledQuery> alternatives) {
+        long[] marked = new long[(rack.size() + 63) >>> 6];
+        for (CompiledQuery query : alternatives) {
+            if (!query.isEmpty()) {
+                QueryPlanner.plan(rack, query).forEachRow(row -> marked[row >>> 6] |= 1L << row);
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * count method - the number of samples of <code>wineList</code> meeting every condition. Over racks
+     * this is a popcount of the ANDed condition bitmaps, without a list of the samples being made.
+     *
+     * @param wineList the samples to test
+     * @param conditions the conditions, all of which a sample must meet
+     * @return number of matching samples
+     */
+    public static int count(List<WineSample> wineList, List<QueryCondition> conditions) {
+        return count(wineList, new CompiledQuery(conditions));
+    }
+
+    /**
+     * count method - as above, for conditions compiled already
+     *
+     * @param wineList the samples to test
+     * @param query the compiled conditions
+     * @return number of matching samples
+     */
+    public static int count(List<WineSample> wineList, CompiledQuery query) {
+        if (query.isEmpty()) {
+            return 0;
+        }
+        List<WineSampleRack> racks = racksOf(wineList);
+        if (racks == null) {
+            return filter(wineList, query).size();
+        }
+        int count = 0;
+        for (WineSampleRack rack : racks) {
+            QueryPlan plan = QueryPlanner.plan(rack, query);
+            if (plan.isSplittable() && RackSegments.isParallel(rack.size())) {
+                for (int segmentCount : RackSegments.map(0, rack.size(), plan::count)) {
+                    count += segmentCount;
+                }
+            }
+            else {
+                count += plan.count();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * order method - sorts <code>wineList</code> in place by the properties of the conditions, the
+     * last condition's property first and each earlier one breaking ties, keeping list order
+     * among samples that tie on all of them. This is the order Query.solveQuery has always
+     * returned its results in.
+     *
+     * @param wineList the samples to sort
+     * @param conditions the conditions whose properties to sort by
+     */
+    public static void order(List<WineSample> wineList, List<QueryCondition> conditions) {
+        if (conditions.isEmpty() || wineList.size() < 2) {
+            return;
+        }
+        // List.sort is stable, so samples that tie stay in list order
+        wineList.sort(orderComparator(conditions, conditions.size()));
+    }
+
+    /**
+     * orderBy method - sorts <code>wineList</code> in place by one property, keeping list order among
+     * samples with equal values (NaN after every number). The sort is on primitive keys: each
+     * value is replaced by its rank among the distinct values, and the ranks packed with the
+     * samples' positions into longs for Arrays.parallelSort, so no comparator runs per pair.
+     *
+     * @param wineList the samples to sort
+     * @param property the property to sort by
+     * @param descending whether the highest values come first
+     */
+    public static void orderBy(List<WineSample> wineList, WineProperty property, boolean descending) {
+        int size = wineList.size();
+        if (size < 2) {
+            return;
+        }
+        int ordinal = property.ordinal();
+        double[] keys = new double[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = wineList.get(i).getProperty(ordinal);
+        }
+        double[] distinct = keys.clone();
+        Arrays.parallelSort(distinct);
+        int count = 1;
+        for (int i = 1; i < size; i++) {
+            if (Double.compare(distinct[i], distinct[count - 1]) != 0) {
+                distinct[count++] = distinct[i];
+            }
+        }
+        // rank in the high half, position in the low half, so equal ranks sort by position
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            int rank = Arrays.binarySearch(distinct, 0, count, keys[i]);
+            order[i] = (long) (descending ? count - 1 - rank : rank) << 32 | i;
+        }
+        Arrays.parallelSort(order);
+        Object[] samples = wineList.toArray();
+        for (int i = 0; i < size; i++) {
+            wineList.set(i, (WineSample) samples[(int) order[i]]);
+        }
+    }
+
+    /**
+     * top method - the first <code>limit</code> samples of <code>wineList</code> meeting every condition,
+     * in the order of one property (as by orderBy), found with a bounded heap so that at most
+     * <code>limit</code> samples are held whatever the number of matches
+     *
+     * @param wineList the samples to test
+     * @param query the compiled conditions
+     * @param property the property to order by
+     * @param descending whether the highest values come first
+     * @param limit the most samples to return
+     * @return ArrayList of at most <code>limit</code> matching samples
+     */
+    public static List<WineSample> top(List<WineSample> wineList, CompiledQuery query, WineProperty property, boolean descending, int limit) {
+        return topAny(wineList, Collections.singletonList(query), property, descending, limit);
+    }
+
+    /**
+     * topAny method - as top, but for the samples meeting every condition of at least one of
+     * <code>alternatives</code>: over racks, the rows filterAny would mark are offered to the heap
+     * in row order, so the matches are never listed or sorted in full
+     *
+     * @param wineList the samples to test
+     * @param alternatives the compiled conditions of each alternative
+     * @param property the property to order by
+     * @param descending whether the highest values come first
+     * @param limit the most samples to return
+     * @return ArrayList of at most <code>limit</code> matching samples
+     */
+    public static List<WineSample> topAny(List<WineSample> wineList, List<CompiledQuery> alternatives, WineProperty property,
+                                          boolean descending, int limit) {
+        return top(wineList, alternatives, property.ordinal(), new TopKHeap(limit, descending, null));
+    }
+
+    /**
+     * top method - as above, in the order of order(), i.e. the first <code>limit</code> samples that
+     * filtering and then ordering by <code>conditions</code> would give
+     *
+     * @param wineList the samples to test
+     * @param query the compiled conditions
+     * @param conditions the conditions whose properties to order by
+     * @param limit the most samples to return
+     * @return ArrayList of at most <code>limit</code> matching samples
+     */
+    public static List<WineSample> top(List<WineSample> wineList, CompiledQuery query, List<QueryCondition> conditions, int limit) {
+        return topAny(wineList, Collections.singletonList(query), conditions, limit);
+    }
+
+    /**
+     * topAny method - as above, for the samples meeting every condition of at least one of <code>alternatives</code>
+     *
+     * @param wineList the samples to test
+     * @param alternatives the compiled conditions of each alternative
+     * @param conditions the conditions whose properties to order by
+     * @param limit the most samples to return
+     * @return ArrayList of at most <code>limit</code> matching samples
+     */
+    public static List<WineSample> topAny(List<WineSample> wineList, List<CompiledQuery> alternatives, List<QueryCondition> conditions, int limit) {
+        if (conditions.isEmpty()) {
+            List<WineSample> matches = filterAny(wineList, alternatives);
+            return new ArrayList<>(matches.subList(0, Math.min(limit, matches.size())));
+        }
+        int last = conditions.size() - 1;
+        Comparator<WineSample> tieBreak = last == 0 ? null : orderComparator(conditions, last);
+        return top(wineList, alternatives, conditions.get(last).getWineProperty().ordinal(), new TopKHeap(limit, false, tieBreak));
+    }
+
+    // Offers every match to the heap in list order, keyed by property <code>ordinal</code>
+    private static List<WineSample> top(List<WineSample> wineList, List<CompiledQuery> alternatives, int ordinal, TopKHeap heap) {
+        List<WineSampleRack> racks = racksOf(wineList);
+        if (racks != null) {
+            for (int r = 0; r < racks.size(); r++) {
+                WineSampleRack rack = racks.get(r);
+                WineColumn column = rack.getColumn(WineProperty.values()[ordinal]);
+                long first = (long) r << 32;
+                if (alternatives.size() == 1) {
+                    if (!alternatives.get(0).isEmpty()) {
+                        QueryPlanner.plan(rack, alternatives.get(0)).forEachRow(row -> heap.offer(column.get(row), first | row, rack, row));
+                    }
+                    continue;
+                }
+                // several alternatives: their rows are marked first, so that each match is offered once, in row order
+                long[] marked = mark(rack, alternatives);
+                for (int w = 0; w < marked.length; w++) {
+                    for (long word = marked[w]; word != 0; word &= word - 1) {
+                        int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                        heap.offer(column.get(row), first | row, rack, row);
+                    }
+                }
+            }
+        }
+        else {
+            long position = 0;
+            for (WineSample wine : wineList) {
+                for (CompiledQuery query : alternatives) {
+                    if (query.test(wine)) {
+                        heap.offer(wine.getProperty(ordinal), position, wine);
+                        break;
+                    }
+                }
+                position++;
+            }
+        }
+        return heap.toList();
+    }
+
+    /**
+     * aggregate method - groups the samples of <code>wineList</code> meeting every condition of at least one
+     * of <code>alternatives</code> by one property, and computes the aggregates of each group, in a single
+     * pass that never makes a list of the matching samples. Over racks, each rack's matching rows (found
+     * as by filter, or a block mask at a time for several alternatives) go straight into primitive
+     * per-group accumulators (see GroupAccumulator) reading the racks' columns, one accumulator per
+     * segment of a large rack (see RackSegments), merged in row order. With no alternatives, or only an
+     * empty one, every sample is aggregated.
+     *
+     * @param wineList the samples to test
+     * @param alternatives the compiled conditions of each alternative
+     * @param groupBy the property to group by, or null for a single group
+     * @param aggregates the values to compute per group
+     * @return AggregateResult of the groups, in ascending order of their value
+     */
+    public static AggregateResult aggregate(List<WineSample> wineList, List<CompiledQuery> alternatives, WineProperty groupBy,
+                                            List<Aggregate> aggregates) {
+        if (alternatives.isEmpty()) {
+            alternatives = Collections.singletonList(new CompiledQuery(Collections.emptyList()));
+        }
+        GroupAccumulator groups = new GroupAccumulator(groupBy, aggregates, null);
+        List<WineSampleRack> racks = racksOf(wineList);
+        if (racks == null) {
+            for (WineSample wine : wineList) {
+                for (CompiledQuery query : alternatives) {
+                    if (query.test(wine)) {
+                        groups.add(wine);
+                        break;
+                    }
+                }
+            }
+            return groups.toResult();
+        }
+        for (WineSampleRack rack : racks) {
+            List<QueryPlan> plans = new ArrayList<>();
+            for (CompiledQuery query : alternatives) {
+                QueryPlan plan = QueryPlanner.plan(rack, query);
+                if (plan.getAccessPath() != QueryPlan.AccessPath.EMPTY) {
+                    plans.add(plan);
+                }
+            }
+            if (plans.size() == 1 && !plans.get(0).isSplittable()) {
+                // an index or bitmap lookup, which hands over its rows all at once
+                GroupAccumulator rows = new GroupAccumulator(groupBy, aggregates, rack);
+                plans.get(0).forEachRow(rows::add);
+                groups.merge(rows);
+            }
+            else if (!plans.isEmpty()) {
+                List<GroupAccumulator> segments = RackSegments.map(0, rack.size(),
+                    (from, to) -> aggregate(rack, plans, from, to, groupBy, aggregates));
+                for (GroupAccumulator segment : segments) {
+                    groups.merge(segment);
+                }
+            }
+        }
+        return groups.toResult();
+    }
+
+    // Aggregates rows [start, end) of a rack meeting any of the plans: one plan runs as usual, several OR their block masks
+    private static GroupAccumulator aggregate(WineSampleRack rack, List<QueryPlan> plans, int start, int end, WineProperty groupBy,
+                                              List<Aggregate> aggregates) {
+        GroupAccumulator rows = new GroupAccumulator(groupBy, aggregates, rack);
+        if (plans.size() == 1) {
+            plans.get(0).forEachRow(start, end, rows::add);
+            return rows;
+        }
+        long[] words = new long[QueryPlan.BLOCK_ROWS >>> 6];
+        long[] block = new long[QueryPlan.BLOCK_ROWS >>> 6];
+        for (int from = start; from < end; from += QueryPlan.BLOCK_ROWS) {
+            int to = Math.min(end, from + QueryPlan.BLOCK_ROWS);
+            int wordCount = (to - from + 63) >>> 6;
+            Arrays.fill(words, 0);
+            for (QueryPlan plan : plans) {
+                if (plan.select(from, to, block)) {
+                    for (int w = 0; w < wordCount; w++) {
+                        words[w] |= block[w];
+                    }
+                }
+            }
+            for (int w = 0; w < wordCount; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    rows.add(from + (w << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Order of the properties of conditions [0, to), the last of them first
+    static Comparator<WineSample> orderComparator(List<QueryCondition> conditions, int to) {
+        Comparator<WineSample> comparator = null;
+        for (int c = to - 1; c >= 0; c--) {
+            Comparator<WineSample> byProperty = byProperty(conditions.get(c).getWineProperty().ordinal());
+            comparator = comparator == null ? byProperty : comparator.thenComparing(byProperty);
+        }
+        return comparator;
+    }
+
+    // Racks that <code>wineList</code> is made of, in order, or null if it is not a rack or a view over racks
+    static List<WineSampleRack> racksOf(List<WineSample> wineList) {
+        if (wineList instanceof WineSampleRack) {
+            return Collections.singletonList((WineSampleRack) wineList);
+        }
+        if (wineList instanceof WineSampleRackView) {
+            return ((WineSampleRackView) wineList).getWineSampleRacks();
+        }
+        return null;
+    }
+
+    // Ascending order of one property as by Double.compare (NaN after every number), a total order
+    private static Comparator<WineSample> byProperty(int ordinal) {
+        return (a, b) -> Double.compare(a.getProperty(ordinal), b.getProperty(ordinal));
+    }
+}
@@ -0,0 +1,61 @@
+package assignment2019.codeprovided;
+
+import java.util.function.DoublePredicate;
+
+/**
+ * QueryOperator.java
+ *
+ * The comparison operators a QueryCondition can use, so that the operator text is looked up
+ * once when a condition is made rather than matched as a String for every sample tested.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public enum QueryOperator {
+    GREATER(">"),
+    GREATER_OR_EQUAL(">="),
+    LESS("<"),
+    LESS_OR_EQUAL("<="),
+    EQUAL("="),
+    NOT_EQUAL("!=");
+
+    private String symbol;
+
+    QueryOperator(String symbol) { this.symbol = symbol; }
+
+    public String getSymbol() { return this.symbol; }
+
+    /**
+     * fromSymbol method - the operator written as <code>symbol</code> in queries and filters
+     *
+     * @param symbol one of >, >=, <, <=, =, !=
+     * @return the operator, or null if the symbol is not one of them
+     */
+    public static QueryOperator fromSymbol(String symbol) {
+        for (QueryOperator operator : values()) {
+            if (operator.symbol.equals(symbol)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * compile method - the test <code>property operator value</code> as a predicate on property values,
+     * one lambda per operator so that each condition runs a single fixed comparison
+     *
+     * @param value the value to compare with
+     * @return predicate accepting the property values that satisfy the comparison
+     */
+    public DoublePredicate compile(double value) {
+        switch (this) {
+            case GREATER: return property -> property > value;
+            case GREATER_OR_EQUAL: return property -> property >= value;
+            case LESS: return property -> property < value;
+            case LESS_OR_EQUAL: return property -> property <= value;
+            case EQUAL: return property -> property == value;
+            default: return property -> property != value;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * QueryParser.java
+ *
+ * Reads the query language of the query file in a single pass over the characters of a line:
+ * <pre>
+ *   select TYPE [(or | and | ,) TYPE]... [where CONDITION [(and | or) CONDITION]...]
+ *          ([order by PROPERTY [asc | desc]] [limit COUNT] | [group by PROPERTY] compute AGGREGATE [, AGGREGATE]...)
+ *   TYPE      = red | white | all
+ *   CONDITION = PROPERTY (&gt; | &gt;= | &lt; | &lt;= | = | !=) (NUMBER | ?)
+ *   AGGREGATE = count | (sum | avg | min | max) ( PROPERTY )
+ * </pre>
+ * Keywords, types and property codes (qual, alc, ph, ...) may be in either case, and spaces
+ * around operators are optional. "and" binds tighter than "or", so <code>a and b or c</code> is met
+ * by samples meeting both a and b, or c. Naming both red and white, or all, queries ALL wines.
+ * A query with <code>compute</code> is an aggregate query (see Query.aggregateQuery).
+ * The lexer reads tokens in place as offsets into the text, so the only objects made are a
+ * property code and a number's digits per condition, and the result is a PreparedQuery.
+ * prepare keeps the most recently used PreparedQueries by text, so a query seen before, or run
+ * again with new parameters, is not parsed again.
+ * Malformed queries are rejected with an IllegalArgumentException naming the column at fault.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class QueryParser {
+
+    static final int MAX_PREPARED = 256;
+
+    // Most recently used prepared queries, by text
+    private static final Map<String, PreparedQuery> prepared = new LinkedHashMap<String, PreparedQuery>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedQuery> eldest) {
+            return size() > MAX_PREPARED;
+        }
+    };
+
+    // Kinds of token
+    private static final int END = 0, WORD = 1, NUMBER = 2, OPERATOR = 3, PARAMETER = 4, COMMA = 5, OPEN = 6, CLOSE = 7;
+
+    // Instance variables: the text and the current token, as its kind and [start, end) in the text
+    private final String text;
+    private int position;
+    private int kind;
+    private int start;
+    private int end;
+
+    // Constructor
+    private QueryParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * prepare method - the PreparedQuery for a query's text, parsed on first sight and then kept
+     *
+     * @param text the query, e.g. <code>select red or white where qual > ? and ph < 3.2</code>
+     * @return PreparedQuery of the text
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    public static PreparedQuery prepare(String text) {
+        synchronized (prepared) {
+            PreparedQuery query = prepared.get(text);
+            if (query != null) {
+                return query;
+            }
+        }
+        PreparedQuery query = parse(text);
+        synchronized (prepared) {
+            prepared.put(text, query);
+        }
+        return query;
+    }
+
+    /**
+     * parse method - parses a query's text, without looking in or adding to the prepared queries
+     *
+     * @param text the query
+     * @return PreparedQuery of the text
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    public static PreparedQuery parse(String text) {
+        return new QueryParser(text).statement();
+    }
+
+    // select TYPE... [where CONDITION...]
+    private PreparedQuery statement() {
+        next();
+        expect("select");
+        boolean red = false, white = false;
+        do {
+            if (isWord("red")) red = true;
+            else if (isWord("white")) white = true;
+            else if (isWord("all")) red = white = true;
+            else throw error("a wine type");
+            next();
+            if (kind == COMMA || isWord("or") || isWord("and")) {
+                next();
+            }
+            else break;
+        } while (true);
+        WineType wineType = red && white ? WineType.ALL : red ? WineType.RED : WineType.WHITE;
+
+        int count = 0, parameters = 0;
+        WineProperty[] properties = new WineProperty[4];
+        String[] operators = new String[4];
+        double[] values = new double[4];
+        int[] slots = new int[4];
+        int[] alternativeEnds = new int[1];
+        int alternatives = 0;
+        if (isWord("where")) {
+            next();
+            if (endOfConditions()) {
+                throw error("a condition");
+            }
+            while (!endOfConditions()) {
+                if (count == properties.length) {
+                    properties = Arrays.copyOf(properties, count * 2);
+                    operators = Arrays.copyOf(operators, count * 2);
+                    values = Arrays.copyOf(values, count * 2);
+                    slots = Arrays.copyOf(slots, count * 2);
+                }
+                // PROPERTY OPERATOR (NUMBER | ?)
+                properties[count] = property();
+                if (kind != OPERATOR) {
+                    throw error("an operator");
+                }
+                operators[count] = operator();
+                next();
+                if (kind == PARAMETER) {
+                    slots[count] = parameters++;
+                }
+                else if (kind == NUMBER) {
+                    slots[count] = -1;
+                    values[count] = Double.parseDouble(token());
+                }
+                else {
+                    throw error("a number or ?");
+                }
+                count++;
+                next();
+                if (isWord("and")) {
+                    next();
+                }
+                else if (isWord("or") || endOfConditions()) {
+                    if (alternatives == alternativeEnds.length) {
+                        alternativeEnds = Arrays.copyOf(alternativeEnds, alternatives * 2);
+                    }
+                    alternativeEnds[alternatives++] = count;
+                    if (isWord("or")) {
+                        next();
+                        if (endOfConditions()) {
+                            throw error("a condition");
+                        }
+                    }
+                }
+                else {
+                    throw error("and, or or the end of the conditions");
+                }
+            }
+        }
+        if (alternatives == 0) {
+            alternativeEnds[alternatives++] = 0; // no conditions at all, as for a query written without any
+        }
+
+        // group by PROPERTY compute AGGREGATE...
+        WineProperty groupBy = null;
+        List<Aggregate> aggregates = null;
+        if (isWord("group")) {
+            next();
+            expect("by");
+            groupBy = property();
+            if (!isWord("compute")) {
+                throw error("'compute'");
+            }
+        }
+        // order by PROPERTY [asc | desc]
+        WineProperty orderBy = null;
+        boolean descending = false;
+        // limit COUNT
+        int limit = -1;
+        if (isWord("compute")) {
+            next();
+            aggregates = new ArrayList<>();
+            aggregates.add(aggregate());
+            while (kind == COMMA) {
+                next();
+                aggregates.add(aggregate());
+            }
+            aggregates = Collections.unmodifiableList(aggregates);
+        }
+        else {
+            if (isWord("order")) {
+                next();
+                expect("by");
+                orderBy = property();
+                if (isWord("asc") || isWord("desc")) {
+                    descending = isWord("desc");
+                    next();
+                }
+            }
+            if (isWord("limit")) {
+                next();
+                if (kind != NUMBER || !isWholeNumber()) {
+                    throw error("a whole number");
+                }
+                limit = Integer.parseInt(token());
+                next();
+            }
+        }
+        if (kind != END) {
+            throw error("the end of the query");
+        }
+        return new PreparedQuery(text, wineType, Arrays.copyOf(properties, count), Arrays.copyOf(operators, count),
+            Arrays.copyOf(values, count), Arrays.copyOf(slots, count), Arrays.copyOf(alternativeEnds, alternatives), parameters,
+            orderBy, descending, limit, groupBy, aggregates);
+    }
+
+    // count | (sum | avg | min | max) ( PROPERTY )
+    private Aggregate aggregate() {
+        Aggregate.Function function = kind == WORD ? Aggregate.Function.fromName(token().toLowerCase()) : null;
+        if (function == null) {
+            throw error("an aggregate");
+        }
+        next();
+        if (function == Aggregate.Function.COUNT) {
+            return Aggregate.count();
+        }
+        if (kind != OPEN) {
+            throw error("'('");
+        }
+        next();
+        WineProperty property = property();
+        if (kind != CLOSE) {
+            throw error("')'");
+        }
+        next();
+        return new Aggregate(function, property);
+    }
+
+    // The current token as a property code, moving past it
+    private WineProperty property() {
+        WineProperty property = kind == WORD ? WineProperty.fromFileIdentifier(token().toLowerCase()) : null;
+        if (property == null) {
+            throw error("a wine property");
+        }
+        next();
+        return property;
+    }
+
+    // Whether the current token ends the conditions of a where clause
+    private boolean endOfConditions() {
+        return kind == END || isWord("order") || isWord("limit") || isWord("group") || isWord("compute");
+    }
+
+    // Whether the current number token is a count: digits only, short enough for an int
+    private boolean isWholeNumber() {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return end - start <= 9;
+    }
+
+    // Whether the current number token reads as a number: a sign, digits with at most one point
+    // among them, and an exponent with digits of its own (not e.g. 1.2.3, . or 5e)
+    private boolean isWellFormedNumber() {
+        int i = start;
+        if (text.charAt(i) == '-' || text.charAt(i) == '+') {
+            i++;
+        }
+        int digits = 0, points = 0;
+        for (; i < end && (isDigit(text.charAt(i)) || text.charAt(i) == '.'); i++) {
+            if (text.charAt(i) == '.') points++;
+            else digits++;
+        }
+        if (digits == 0 || points > 1) {
+            return false;
+        }
+        if (i < end) {
+            i++; // the e
+            if (text.charAt(i - 1) != 'e' && text.charAt(i - 1) != 'E') {
+                return false;
+            }
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                i++;
+            }
+            if (i == end) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Moves on to the next token
+    private void next() {
+        int length = text.length();
+        while (position < length && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        start = position;
+        if (position == length) {
+            kind = END;
+        }
+        else {
+            char c = text.charAt(position);
+            char following = position + 1 < length ? text.charAt(position + 1) : 0;
+            if (Character.isLetter(c) || c == '_') {
+                kind = WORD;
+                while (position < length && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                    position++;
+                }
+            }
+            else if (isDigit(c) || c == '.' || ((c == '-' || c == '+') && (isDigit(following) || following == '.'))) {
+                kind = NUMBER;
+                position++;
+                while (position < length && (isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                    position++;
+                }
+                // an exponent, e.g. 1e-3
+                if (position < length && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+                    position++;
+                    if (position < length && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+                        position++;
+                    }
+                    while (position < length && isDigit(text.charAt(position))) {
+                        position++;
+                    }
+                }
+                end = position;
+                if (!isWellFormedNumber()) {
+                    throw error("a number");
+                }
+            }
+            else if (c == '<' || c == '>' || c == '=' || (c == '!' && following == '=')) {
+                kind = OPERATOR;
+                position += following == '=' && c != '=' ? 2 : 1;
+            }
+            else if (c == '?') {
+                kind = PARAMETER;
+                position++;
+            }
+            else if (c == ',') {
+                kind = COMMA;
+                position++;
+            }
+            else if (c == '(' || c == ')') {
+                kind = c == '(' ? OPEN : CLOSE;
+                position++;
+            }
+            else {
+                throw error("a word, number or operator");
+            }
+        }
+        end = position;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Whether the current token is the given word, in any case
+    private boolean isWord(String word) {
+        return kind == WORD && end - start == word.length() && text.regionMatches(true, start, word, 0, word.length());
+    }
+
+    private void expect(String word) {
+        if (!isWord(word)) {
+            throw error("'" + word + "'");
+        }
+        next();
+    }
+
+    private String token() {
+        return text.substring(start, end);
+    }
+
+    // The current operator token as one of QueryOperator's symbols, without making a new String
+    private String operator() {
+        char c = text.charAt(start);
+        boolean orEqual = end - start == 2;
+        switch (c) {
+            case '<': return orEqual ? QueryOperator.LESS_OR_EQUAL.getSymbol() : QueryOperator.LESS.getSymbol();
+            case '>': return orEqual ? QueryOperator.GREATER_OR_EQUAL.getSymbol() : QueryOperator.GREATER.getSymbol();
+            case '!': return QueryOperator.NOT_EQUAL.getSymbol();
+            default: return QueryOperator.EQUAL.getSymbol();
+        }
+    }
+
+    private IllegalArgumentException error(String expected) {
+        String found = start >= text.length() ? "end of query" : "'" + text.substring(start, Math.max(end, start + 1)) + "'";
+        return new IllegalArgumentException("Expected " + expected + " but found " + found + " at column "
+            + (start + 1) + " of query: " + text);
+    }
+}
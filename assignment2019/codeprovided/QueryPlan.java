@@ -0,0 +1,309 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * QueryPlan.java
+ *
+ * How the QueryPlanner has chosen to answer a query over one WineSampleRack: the query's
+ * conditions folded into one PropertyRange per property, ordered so that the one expected to
+ * keep the fewest rows is checked first, and the access path used to find the rows.
+ * <ul>
+ *   <li>EMPTY - a condition can never be met, so no row is read</li>
+ *   <li>ALL - every row matches, so no row is tested</li>
+ *   <li>SCAN - every row is tested against the ranges, a block of rows at a time into a selection mask
+ *   unless QueryEngine.setVectorized has switched that off</li>
+ *   <li>INDEX - only the rows in one range's run of a sorted PropertyIndex are tested</li>
+ *   <li>BITMAP - the ranges are read off BitmapIndexes and ANDed</li>
+ * </ul>
+ * SCAN and ALL plans can also be run over any segment of the rack's rows on its own (see isSplittable),
+ * which is how QueryEngine spreads a large rack across cores (see RackSegments).
+ * A plan reads the rack's columns directly, so like a row predicate it must not outlive a change to the rack.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class QueryPlan {
+
+    public enum AccessPath { EMPTY, ALL, SCAN, INDEX, BITMAP }
+
+    // Rows per block of a masked scan: a few hundred bytes of mask, and a block of each column that stays in cache
+    static final int BLOCK_ROWS = 4096;
+
+    // Instance variables
+    private final WineSampleRack rack;
+    private final PropertyRange[] ranges;
+    private final double[] selectivities;
+    private final AccessPath accessPath;
+    // the range looked up in its sorted index, for the INDEX access path
+    private final PropertyRange indexed;
+    // each range's select on its column, bounds worked out once for every block (see select)
+    private final WineColumn.Selector[] selectors;
+
+    // Constructor (plans are made by QueryPlanner)
+    QueryPlan(WineSampleRack rack, PropertyRange[] ranges, double[] selectivities, AccessPath accessPath, PropertyRange indexed) {
+        this.rack = rack;
+        this.ranges = ranges;
+        this.selectivities = selectivities;
+        this.accessPath = accessPath;
+        this.indexed = indexed;
+        selectors = new WineColumn.Selector[ranges.length];
+        for (int r = 0; r < ranges.length; r++) {
+            selectors[r] = ranges[r].selector(rack.getColumn(ranges[r].getWineProperty()));
+        }
+    }
+
+    /**
+     * Getter for the access path chosen
+     *
+     * @return AccessPath of the plan
+     */
+    public AccessPath getAccessPath() {
+        return accessPath;
+    }
+
+    /**
+     * Getter for the folded conditions, in the order they are checked
+     *
+     * @return array of PropertyRange, most selective first
+     */
+    public PropertyRange[] getRanges() {
+        return ranges.clone();
+    }
+
+    /**
+     * getEstimatedRows method - the number of rows the histograms suggest will match
+     *
+     * @return estimated row count
+     */
+    public double getEstimatedRows() {
+        if (accessPath == AccessPath.EMPTY) {
+            return 0;
+        }
+        double rows = rack.size();
+        for (double selectivity : selectivities) {
+            rows *= selectivity;
+        }
+        return rows;
+    }
+
+    /**
+     * isSplittable method - whether the plan tests rows independently of each other, so that
+     * segments of the rack can be run separately (see forEachRow(int, int, IntConsumer))
+     *
+     * @return true for SCAN and ALL plans
+     */
+    public boolean isSplittable() {
+        return accessPath == AccessPath.SCAN || accessPath == AccessPath.ALL;
+    }
+
+    /**
+     * forEachRow method - passes each matching row of the rack to <code>action</code>, in row order
+     *
+     * @param action the action to run per row
+     */
+    public void forEachRow(IntConsumer action) {
+        switch (accessPath) {
+            case EMPTY:
+                return;
+            case BITMAP:
+                bitmap().forEach(action);
+                return;
+            case INDEX: {
+                IntPredicate predicate = predicate();
+                PropertyIndex index = rack.getIndex(indexed.getWineProperty());
+                int[] range = indexed.range(index);
+                for (int row : index.copyRows(range[0], range[1])) {
+                    if (predicate.test(row)) {
+                        action.accept(row);
+                    }
+                }
+                return;
+            }
+            default:
+                forEachRow(0, rack.size(), action);
+        }
+    }
+
+    /**
+     * forEachRow method - as above, over rows [from, to) of a SCAN or ALL plan only
+     *
+     * @param from first row
+     * @param to row just past the last
+     * @param action the action to run per row
+     */
+    public void forEachRow(int from, int to, IntConsumer action) {
+        if (!isSplittable()) {
+            throw new IllegalStateException(accessPath + " plans cannot be run over part of a rack");
+        }
+        if (accessPath == AccessPath.ALL) {
+            for (int row = from; row < to; row++) {
+                action.accept(row);
+            }
+        }
+        else if (QueryEngine.isVectorized()) {
+            scan(from, to, action);
+        }
+        else {
+            IntPredicate predicate = predicate();
+            for (int row = from; row < to; row++) {
+                if (predicate.test(row)) {
+                    action.accept(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * rows method - the matching rows among rows [from, to) of a SCAN or ALL plan
+     *
+     * @param from first row
+     * @param to row just past the last
+     * @return array of the matching rows, ascending
+     */
+    public int[] rows(int from, int to) {
+        int[][] rows = {new int[16]};
+        int[] count = {0};
+        forEachRow(from, to, row -> {
+            if (count[0] == rows[0].length) {
+                rows[0] = Arrays.copyOf(rows[0], count[0] * 2);
+            }
+            rows[0][count[0]++] = row;
+        });
+        return Arrays.copyOf(rows[0], count[0]);
+    }
+
+    /**
+     * count method - the number of matching rows; a popcount when the plan uses bitmaps, and
+     * known without reading anything for EMPTY and ALL
+     *
+     * @return number of matching rows
+     */
+    public int count() {
+        if (accessPath == AccessPath.EMPTY) {
+            return 0;
+        }
+        if (accessPath == AccessPath.ALL) {
+            return rack.size();
+        }
+        if (accessPath == AccessPath.BITMAP) {
+            return bitmap().cardinality();
+        }
+        return isSplittable() ? count(0, rack.size()) : countRows();
+    }
+
+    /**
+     * count method - as above, over rows [from, to) of a SCAN or ALL plan only
+     *
+     * @param from first row
+     * @param to row just past the last
+     * @return number of matching rows among them
+     */
+    public int count(int from, int to) {
+        if (accessPath == AccessPath.ALL) {
+            return to - from;
+        }
+        if (accessPath == AccessPath.SCAN && QueryEngine.isVectorized()) {
+            return scan(from, to, null);
+        }
+        int[] count = {0};
+        forEachRow(from, to, row -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * toString method - a one-line explanation of the plan, e.g.
+     * <code>BITMAP over 1599 RED rows, ~96 expected: quality != 5.0 != 6.0 (6%), 11.0 < alcohol (41%)</code>
+     *
+     * @return String form of the plan
+     */
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(accessPath).append(" over ").append(rack.size()).append(' ').append(rack.getWineType()).append(" rows");
+        text.append(", ~").append(Math.round(getEstimatedRows())).append(" expected");
+        if (accessPath == AccessPath.INDEX) {
+            text.append(", by ").append(indexed.getWineProperty().getName());
+        }
+        for (int r = 0; r < ranges.length; r++) {
+            text.append(r == 0 ? ": " : ", ").append(ranges[r]);
+            text.append(" (").append(Math.round(selectivities[r] * 100)).append("%)");
+        }
+        return text.toString();
+    }
+
+    // All the ranges as one test on row numbers, the most selective first
+    private IntPredicate predicate() {
+        IntPredicate predicate = null;
+        for (PropertyRange range : ranges) {
+            IntPredicate next = range.predicate(rack.getColumn(range.getWineProperty()));
+            predicate = predicate == null ? next : predicate.and(next);
+        }
+        return predicate == null ? row -> true : predicate;
+    }
+
+    private int countRows() {
+        int[] count = {0};
+        forEachRow(row -> count[0]++);
+        return count[0];
+    }
+
+    // Masked scan of rows [start, end): the set bits of each block's mask are passed to action, if any, and counted
+    private int scan(int start, int end, IntConsumer action) {
+        long[] words = new long[BLOCK_ROWS >>> 6];
+        int count = 0;
+        for (int from = start; from < end; from += BLOCK_ROWS) {
+            int to = Math.min(end, from + BLOCK_ROWS);
+            if (!select(from, to, words)) {
+                continue;
+            }
+            for (int w = 0, wordCount = (to - from + 63) >>> 6; w < wordCount; w++) {
+                long word = words[w];
+                count += Long.bitCount(word);
+                while (action != null && word != 0) {
+                    action.accept(from + (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * select method - the selection mask of a block of rows [from, to), at most BLOCK_ROWS of them, of a
+     * SCAN plan: every range ANDs its bits into <code>words</code> in turn, stopping once nothing is left
+     *
+     * @param from first row
+     * @param to row just past the last
+     * @param words the mask to fill, one word per 64 rows from <code>from</code>
+     * @return false if no row of the block matches
+     */
+    boolean select(int from, int to, long[] words) {
+        int wordCount = (to - from + 63) >>> 6;
+        Arrays.fill(words, 0, wordCount, -1L);
+        if (((to - from) & 63) != 0) {
+            words[wordCount - 1] = (1L << (to - from)) - 1; // only the rows of the block's last, partial word
+        }
+        long any = -1L;
+        for (int r = 0; r < ranges.length && any != 0; r++) {
+            selectors[r].select(words, from, to);
+            any = 0;
+            for (int w = 0; w < wordCount; w++) {
+                any |= words[w];
+            }
+        }
+        return any != 0;
+    }
+
+    // Rows meeting every range, as the AND of one bitmap per range, stopping once nothing is left
+    private RowBitmap bitmap() {
+        RowBitmap rows = null;
+        for (int r = 0; r < ranges.length && (rows == null || !rows.isEmpty()); r++) {
+            RowBitmap next = ranges[r].rows(rack.getBitmapIndex(ranges[r].getWineProperty()));
+            rows = rows == null ? next : rows.and(next);
+        }
+        return rows == null ? RowBitmap.range(rack.size()) : rows;
+    }
+}
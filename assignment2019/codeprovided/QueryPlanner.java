@@ -0,0 +1,158 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+
+/**
+ * QueryPlanner.java
+ *
+ * Chooses how to answer a query over a WineSampleRack (see QueryPlan). The conditions come folded
+ * into one PropertyRange per property (see CompiledQuery), so that e.g. <code>qual != 5 and qual != 4 and qual != 7</code>
+ * is a single check on quality, and each range's selectivity is estimated from the rack's
+ * ColumnHistograms. The ranges are checked most selective first, and the access path is the
+ * cheapest by a rough cost model counting row tests:
+ * <ul>
+ *   <li>a scan tests every row against the first range, the survivors against the next, and so on</li>
+ *   <li>an index lookup sorts the rows in the most selective bounded range's run and tests those</li>
+ *   <li>bitmaps cost a fraction of a row test per row and range, plus one test per matching row</li>
+ * </ul>
+ * An index or bitmap index that has yet to be built is charged a share of its O(n log n) build,
+ * as once built it serves every later query on the property.
+ * Before any of that, a query whose conditions contradict each other, or a range that lies
+ * outside the lowest and highest value of its column, is answered as EMPTY; a range that holds
+ * every value of its column is dropped, and if no range is left the plan is ALL, with nothing to test.
+ * A rack keeps the plans of the queries run over it lately (see WineSampleRack.getPlan), so a
+ * CompiledQuery solved again, e.g. one shared by every binding of a PreparedQuery, is planned once
+ * until the rack changes.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class QueryPlanner {
+
+    // Number of queries an index build is expected to serve, over which its cost is shared
+    private static final double BUILD_AMORTISATION = 16;
+    // Cost of combining one row of one bitmap, relative to testing a row
+    private static final double BITMAP_ROW_COST = 1.0 / 16;
+
+    /**
+     * plan method - plans the query over one rack
+     *
+     * @param rack the rack to be queried
+     * @param query the compiled conditions
+     * @return QueryPlan to run over the rack
+     */
+    public static QueryPlan plan(WineSampleRack rack, CompiledQuery query) {
+        int settings = (QueryEngine.isIndexing() ? 1 : 0) | (QueryEngine.isBitmaps() ? 2 : 0);
+        QueryPlan plan = rack.getPlan(query, settings);
+        if (plan == null) {
+            plan = choose(rack, query);
+            rack.putPlan(query, plan);
+        }
+        return plan;
+    }
+
+    // Plans the query over one rack from scratch
+    private static QueryPlan choose(WineSampleRack rack, CompiledQuery query) {
+        int size = rack.size();
+        if (size == 0 || query.isEmpty()) {
+            return new QueryPlan(rack, new PropertyRange[0], new double[0], QueryPlan.AccessPath.EMPTY, null);
+        }
+        // the rack's lowest and highest values settle some ranges without reading a row
+        PropertyRange[] ranges = new PropertyRange[query.getRanges().length];
+        int count = 0;
+        for (PropertyRange range : query.getRanges()) {
+            double min = rack.getMin(range.getWineProperty());
+            double max = rack.getMax(range.getWineProperty());
+            if (range.matchesNone(min, max)) {
+                return new QueryPlan(rack, new PropertyRange[] {range}, new double[] {0}, QueryPlan.AccessPath.EMPTY, null);
+            }
+            if (!range.matchesAll(min, max)) {
+                ranges[count++] = range;
+            }
+        }
+        if (count == 0) {
+            return new QueryPlan(rack, new PropertyRange[0], new double[0], QueryPlan.AccessPath.ALL, null);
+        }
+        ranges = Arrays.copyOf(ranges, count);
+        double[] selectivities = new double[count];
+        for (int r = 0; r < count; r++) {
+            selectivities[r] = ranges[r].estimate(rack.getHistogram(ranges[r].getWineProperty()));
+        }
+        sortBySelectivity(ranges, selectivities);
+        double buildCost = size * log2(size) / BUILD_AMORTISATION;
+
+        QueryPlan.AccessPath best = QueryPlan.AccessPath.SCAN;
+        double bestCost = size * tests(selectivities);
+        PropertyRange indexed = null;
+        if (QueryEngine.isIndexing()) {
+            // the most selective range with an interval to look up
+            int r = 0;
+            while (r < ranges.length && !ranges[r].isBounded()) r++;
+            if (r < ranges.length) {
+                double rows = size * selectivities[r];
+                double cost = rows * (log2(rows + 2) + tests(selectivities));
+                if (!rack.hasIndex(ranges[r].getWineProperty())) {
+                    cost += buildCost;
+                }
+                if (cost < bestCost) {
+                    best = QueryPlan.AccessPath.INDEX;
+                    bestCost = cost;
+                    indexed = ranges[r];
+                }
+            }
+        }
+        if (QueryEngine.isBitmaps()) {
+            double cost = size * BITMAP_ROW_COST * ranges.length + size * product(selectivities);
+            for (PropertyRange range : ranges) {
+                if (!rack.hasBitmapIndex(range.getWineProperty())) {
+                    cost += buildCost;
+                }
+            }
+            if (cost < bestCost) {
+                best = QueryPlan.AccessPath.BITMAP;
+                indexed = null;
+            }
+        }
+        return new QueryPlan(rack, ranges, selectivities, best, indexed);
+    }
+
+    // Expected number of range tests per row when the ranges are checked in turn
+    private static double tests(double[] selectivities) {
+        double tests = 0, surviving = 1;
+        for (int r = 0; r < selectivities.length; r++) {
+            tests += surviving;
+            surviving *= selectivities[r];
+        }
+        return tests;
+    }
+
+    private static double product(double[] selectivities) {
+        double product = 1;
+        for (double selectivity : selectivities) {
+            product *= selectivity;
+        }
+        return product;
+    }
+
+    private static double log2(double n) {
+        return Math.log(Math.max(n, 2)) / Math.log(2);
+    }
+
+    // Insertion sort of the ranges by ascending selectivity (there are at most one per property),
+    // keeping query order among equals
+    private static void sortBySelectivity(PropertyRange[] ranges, double[] selectivities) {
+        for (int i = 1; i < ranges.length; i++) {
+            PropertyRange range = ranges[i];
+            double selectivity = selectivities[i];
+            int j = i - 1;
+            while (j >= 0 && selectivities[j] > selectivity) {
+                ranges[j + 1] = ranges[j];
+                selectivities[j + 1] = selectivities[j];
+                j--;
+            }
+            ranges[j + 1] = range;
+            selectivities[j + 1] = selectivity;
+        }
+    }
+}
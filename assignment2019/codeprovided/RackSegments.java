@@ -0,0 +1,97 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * RackSegments.java
+ *
+ * Splits the rows of a WineSampleRack into segments of SEGMENT_ROWS rows, small enough that a
+ * segment of each column read stays in a core's cache, and runs a task per segment on the common
+ * ForkJoinPool. Results come back in segment order, so whatever is stitched together from them is
+ * in row order (and so id order) exactly as if one thread had walked the rack.
+ * Racks smaller than QueryEngine's parallel threshold, and machines with a single core, are
+ * handled as a single segment on the calling thread.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class RackSegments {
+
+    // Rows per segment: 128 KB of a double column, and a whole number of QueryPlan's scan blocks
+    static final int SEGMENT_ROWS = 1 << 14;
+
+    /**
+     * SegmentFunction.java
+     *
+     * Work done on rows [from, to) of a rack.
+     */
+    interface SegmentFunction<T> {
+        T apply(int from, int to);
+    }
+
+    /**
+     * isParallel method - whether rows of a rack of this size are worth handing to the ForkJoinPool
+     *
+     * @param rows number of rows to process
+     * @return true if the rows should be split into segments
+     */
+    static boolean isParallel(int rows) {
+        return rows >= QueryEngine.getParallelThreshold() && rows > SEGMENT_ROWS
+            && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * map method - applies <code>function</code> to rows [from, to), a segment at a time in parallel
+     * if there are enough of them (see isParallel), otherwise in one call on this thread
+     *
+     * @param from first row
+     * @param to row just past the last
+     * @param function the work to do per segment
+     * @return List of the segments' results, in row order
+     */
+    static <T> List<T> map(int from, int to, SegmentFunction<T> function) {
+        List<T> results = new ArrayList<>();
+        if (!isParallel(to - from)) {
+            results.add(function.apply(from, to));
+            return results;
+        }
+        List<SegmentTask<T>> segments = new ArrayList<>();
+        for (int start = from; start < to; start += SEGMENT_ROWS) {
+            segments.add(new SegmentTask<>(function, start, Math.min(to, start + SEGMENT_ROWS)));
+        }
+        ForkJoinTask.invokeAll(segments);
+        for (SegmentTask<T> segment : segments) {
+            results.add(segment.getRawResult());
+        }
+        return results;
+    }
+
+    /**
+     * SegmentTask.java
+     *
+     * Runs a SegmentFunction over one segment of rows.
+     */
+    private static class SegmentTask<T> extends RecursiveTask<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SegmentFunction<T> function;
+        private final int from;
+        private final int to;
+
+        SegmentTask(SegmentFunction<T> function, int from, int to) {
+            this.function = function;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected T compute() {
+            return function.apply(from, to);
+        }
+    }
+}
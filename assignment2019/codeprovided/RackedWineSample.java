@@ -0,0 +1,74 @@
+package assignment2019.codeprovided;
+
+/**
+ * RackedWineSample.java
+ *
+ * Flyweight WineSample that holds no values of its own, only a rack and a row index.
+ * Every getter and setter reads or writes the rack's columns directly.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class RackedWineSample extends WineSample {
+    private final WineSampleRack rack;
+    private final int row;
+
+    RackedWineSample(WineSampleRack rack, int row) {
+        this.rack = rack;
+        this.row = row;
+    }
+
+    WineSampleRack getRack() { return rack; }
+    int getRow() { return row; }
+
+    public double getProperty(WineProperty property) { return rack.getValue(row, property.ordinal()); }
+    public double getProperty(int ordinal) { return rack.getValue(row, ordinal); }
+
+    public void getProperties(double[] target) {
+        for (int p = 0; p < WineSampleRack.NUMBER_OF_PROPERTIES; p++) {
+            target[p] = rack.getValue(row, p);
+        }
+    }
+
+    public int getId() { return rack.getId(row); }
+    public WineType getType() { return rack.getWineType(); }
+    public double getFixedAcidity() { return rack.getValue(row, WineProperty.FixedAcidity); }
+    public double getVolatileAcidity() { return rack.getValue(row, WineProperty.VolatileAcidity); }
+    public double getCitricAcid() { return rack.getValue(row, WineProperty.CitricAcid); }
+    public double getResidualSugar() { return rack.getValue(row, WineProperty.ResidualSugar); }
+    public double getChlorides() { return rack.getValue(row, WineProperty.Chlorides); }
+    public double getFreeSulfurDioxide() { return rack.getValue(row, WineProperty.FreeSulfurDioxide); }
+    public double getTotalSulfurDioxide() { return rack.getValue(row, WineProperty.TotalSulfurDioxide); }
+    public double getDensity() { return rack.getValue(row, WineProperty.Density); }
+    public double getpH() { return rack.getValue(row, WineProperty.PH); }
+    public double getSulphates() { return rack.getValue(row, WineProperty.Sulphates); }
+    public double getAlcohol() { return rack.getValue(row, WineProperty.Alcohol); }
+    public double getQuality() { return rack.getValue(row, WineProperty.Quality); }
+
+    public void setId(int id) { throw new UnsupportedOperationException("Sample ids are fixed by the rack"); }
+    public void setType(WineType type) { throw new UnsupportedOperationException("Sample type is fixed by the rack"); }
+    public void setFixedAcidity(double value) { rack.setValue(row, WineProperty.FixedAcidity, value); }
+    public void setVolatileAcidity(double value) { rack.setValue(row, WineProperty.VolatileAcidity, value); }
+    public void setCitricAcid(double value) { rack.setValue(row, WineProperty.CitricAcid, value); }
+    public void setResidualSugar(double value) { rack.setValue(row, WineProperty.ResidualSugar, value); }
+    public void setChlorides(double value) { rack.setValue(row, WineProperty.Chlorides, value); }
+    public void setFreeSulfurDioxide(double value) { rack.setValue(row, WineProperty.FreeSulfurDioxide, value); }
+    public void setTotalSulfurDioxide(double value) { rack.setValue(row, WineProperty.TotalSulfurDioxide, value); }
+    public void setDensity(double value) { rack.setValue(row, WineProperty.Density, value); }
+    public void setpH(double value) { rack.setValue(row, WineProperty.PH, value); }
+    public void setSulphates(double value) { rack.setValue(row, WineProperty.Sulphates, value); }
+    public void setAlcohol(double value) { rack.setValue(row, WineProperty.Alcohol, value); }
+    public void setQuality(int value) { rack.setValue(row, WineProperty.Quality, value); }
+
+    // Two views are the same sample if they point at the same row of the same rack
+    public boolean equals(Object o) {
+        if (!(o instanceof RackedWineSample)) return false;
+        RackedWineSample other = (RackedWineSample) o;
+        return rack == other.rack && row == other.row;
+    }
+
+    public int hashCode() {
+        return System.identityHashCode(rack) * 31 + row;
+    }
+}
@@ -0,0 +1,376 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * RowBitmap.java
+ *
+ * Compressed set of row numbers, laid out like a Roaring bitmap: rows are split into chunks of
+ * 2^16 by their high bits, and each non-empty chunk holds its low bits either as a sorted char[]
+ * (up to ARRAY_LIMIT rows) or as a 1024-word long[] bitmap. Sparse chunks stay small, dense
+ * ones are combined 64 rows at a time, and counting is a popcount over the words.
+ * Bitmaps are immutable; they are built in ascending row order with a Builder.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class RowBitmap {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int WORDS = CHUNK_SIZE / 64;
+    // Most rows a chunk holds as an array; beyond this a bitmap is smaller
+    private static final int ARRAY_LIMIT = 4096;
+
+    static final RowBitmap EMPTY = new RowBitmap(new int[0], new Object[0], new int[0], 0);
+
+    // Instance variables: chunk numbers in ascending order, and for each its container (char[] or long[]) and row count
+    private final int[] keys;
+    private final Object[] containers;
+    private final int[] cardinalities;
+    private final int count;
+    private final int cardinality;
+
+    private RowBitmap(int[] keys, Object[] containers, int[] cardinalities, int count) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinalities = cardinalities;
+        int total = 0;
+        for (int c = 0; c < count; c++) {
+            total += cardinalities[c];
+        }
+        this.count = count;
+        this.cardinality = total;
+    }
+
+    /**
+     * range method - the bitmap holding every row in [0, size)
+     *
+     * @param size number of rows
+     * @return RowBitmap of all the rows
+     */
+    public static RowBitmap range(int size) {
+        int chunks = (size + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        int[] keys = new int[chunks];
+        Object[] containers = new Object[chunks];
+        int[] cardinalities = new int[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int rows = Math.min(CHUNK_SIZE, size - (c << CHUNK_BITS));
+            long[] words = new long[WORDS];
+            Arrays.fill(words, 0, rows >>> 6, -1L);
+            if ((rows & 63) != 0) {
+                words[rows >>> 6] = (1L << (rows & 63)) - 1;
+            }
+            keys[c] = c;
+            containers[c] = compact(words, rows);
+            cardinalities[c] = rows;
+        }
+        return new RowBitmap(keys, containers, cardinalities, chunks);
+    }
+
+    /**
+     * Getter for the number of rows in the bitmap
+     *
+     * @return cardinality
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * isEmpty method - whether the bitmap holds no rows
+     *
+     * @return true if the cardinality is 0
+     */
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * forEach method - passes each row to <code>action</code> in ascending order
+     *
+     * @param action the action to run per row
+     */
+    public void forEach(IntConsumer action) {
+        for (int c = 0; c < count; c++) {
+            int high = keys[c] << CHUNK_BITS;
+            Object container = containers[c];
+            if (container instanceof char[]) {
+                for (char low : (char[]) container) {
+                    action.accept(high | low);
+                }
+            }
+            else {
+                long[] words = (long[]) container;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * toArray method - the rows in ascending order
+     *
+     * @return array of row numbers
+     */
+    public int[] toArray() {
+        int[] rows = new int[cardinality];
+        int[] next = {0};
+        forEach(row -> rows[next[0]++] = row);
+        return rows;
+    }
+
+    /**
+     * and method - rows in both this bitmap and <code>other</code>
+     *
+     * @param other the bitmap to intersect with
+     * @return the intersection
+     */
+    public RowBitmap and(RowBitmap other) {
+        Builder result = new Builder();
+        for (int i = 0, j = 0; i < count && j < other.count; ) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else result.put(keys[i], and(containers[i++], other.containers[j++]));
+        }
+        return result.build();
+    }
+
+    /**
+     * or method - rows in this bitmap, <code>other</code>, or both
+     *
+     * @param other the bitmap to unite with
+     * @return the union
+     */
+    public RowBitmap or(RowBitmap other) {
+        Builder result = new Builder();
+        int i = 0, j = 0;
+        while (i < count || j < other.count) {
+            if (j == other.count || (i < count && keys[i] < other.keys[j])) {
+                result.put(keys[i], containers[i++]);
+            }
+            else if (i == count || keys[i] > other.keys[j]) {
+                result.put(other.keys[j], other.containers[j++]);
+            }
+            else {
+                result.put(keys[i], or(containers[i++], other.containers[j++]));
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * andNot method - rows in this bitmap but not in <code>other</code>
+     *
+     * @param other the bitmap of rows to remove
+     * @return the difference
+     */
+    public RowBitmap andNot(RowBitmap other) {
+        Builder result = new Builder();
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            while (j < other.count && other.keys[j] < keys[i]) j++;
+            if (j < other.count && other.keys[j] == keys[i]) {
+                result.put(keys[i], andNot(containers[i], other.containers[j]));
+            }
+            else {
+                result.put(keys[i], containers[i]);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * not method - rows in [0, size) that are not in this bitmap
+     *
+     * @param size number of rows in the universe, e.g. the size of a rack
+     * @return the complement
+     */
+    public RowBitmap not(int size) {
+        return range(size).andNot(this);
+    }
+
+    // Container operations: each returns a char[] or long[] in its most compact form
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a, y = (char[]) b;
+            char[] out = new char[Math.min(x.length, y.length)];
+            int n = 0;
+            for (int i = 0, j = 0; i < x.length && j < y.length; ) {
+                if (x[i] < y[j]) i++;
+                else if (x[i] > y[j]) j++;
+                else { out[n++] = x[i]; i++; j++; }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] x = (char[]) (a instanceof char[] ? a : b);
+            long[] words = (long[]) (a instanceof char[] ? b : a);
+            char[] out = new char[x.length];
+            int n = 0;
+            for (char low : x) {
+                if ((words[low >>> 6] & (1L << low)) != 0) out[n++] = low;
+            }
+            return Arrays.copyOf(out, n);
+        }
+        long[] x = (long[]) a, y = (long[]) b, out = new long[WORDS];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            out[w] = x[w] & y[w];
+            n += Long.bitCount(out[w]);
+        }
+        return compact(out, n);
+    }
+
+    private static Object or(Object a, Object b) {
+        long[] out = new long[WORDS];
+        for (Object container : new Object[] {a, b}) {
+            if (container instanceof char[]) {
+                for (char low : (char[]) container) out[low >>> 6] |= 1L << low;
+            }
+            else {
+                long[] words = (long[]) container;
+                for (int w = 0; w < WORDS; w++) out[w] |= words[w];
+            }
+        }
+        return compact(out, bitCount(out));
+    }
+
+    private static Object andNot(Object a, Object b) {
+        if (a instanceof char[]) {
+            char[] x = (char[]) a, out = new char[x.length];
+            int n = 0;
+            for (char low : x) {
+                if (!contains(b, low)) out[n++] = low;
+            }
+            return Arrays.copyOf(out, n);
+        }
+        long[] out = ((long[]) a).clone();
+        if (b instanceof char[]) {
+            for (char low : (char[]) b) out[low >>> 6] &= ~(1L << low);
+        }
+        else {
+            long[] words = (long[]) b;
+            for (int w = 0; w < WORDS; w++) out[w] &= ~words[w];
+        }
+        return compact(out, bitCount(out));
+    }
+
+    private static boolean contains(Object container, char low) {
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+        return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    private static int bitCount(long[] words) {
+        int n = 0;
+        for (long word : words) n += Long.bitCount(word);
+        return n;
+    }
+
+    // A bitmap container holding <code>n</code> rows, turned into an array container if that is smaller
+    private static Object compact(long[] words, int n) {
+        if (n > ARRAY_LIMIT) {
+            return words;
+        }
+        char[] out = new char[n];
+        int i = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                out[i++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    private static int cardinality(Object container) {
+        return container instanceof char[] ? ((char[]) container).length : bitCount((long[]) container);
+    }
+
+    /**
+     * Builder.java
+     *
+     * Collects rows in ascending order (or whole containers, by ascending chunk) into a RowBitmap.
+     */
+    public static class Builder {
+
+        private int[] keys = new int[4];
+        private Object[] containers = new Object[4];
+        private int[] cardinalities = new int[4];
+        private int count;
+        // rows of the chunk currently being added to, row by row; the buffer grows with the rows
+        // added to a chunk, so that a builder fed a few rows costs a few bytes, not a chunk's worth
+        private int key = -1;
+        private char[] rows = new char[16];
+        private int rowCount;
+
+        /**
+         * add method - adds a row, which must be greater than any added before
+         *
+         * @param row the row number
+         */
+        public void add(int row) {
+            int high = row >>> CHUNK_BITS;
+            if (high != key) {
+                flush();
+                key = high;
+            }
+            if (rowCount == rows.length) {
+                rows = Arrays.copyOf(rows, rowCount * 2);
+            }
+            rows[rowCount++] = (char) row;
+        }
+
+        /**
+         * build method - the bitmap of the rows added so far
+         *
+         * @return RowBitmap
+         */
+        public RowBitmap build() {
+            flush();
+            return new RowBitmap(keys, containers, cardinalities, count);
+        }
+
+        // Adds a whole chunk, after any added before
+        void put(int chunk, Object container) {
+            int n = cardinality(container);
+            if (n == 0) {
+                return;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                containers = Arrays.copyOf(containers, count * 2);
+                cardinalities = Arrays.copyOf(cardinalities, count * 2);
+            }
+            keys[count] = chunk;
+            containers[count] = container;
+            cardinalities[count++] = n;
+        }
+
+        private void flush() {
+            if (rowCount == 0) {
+                return;
+            }
+            if (rowCount <= ARRAY_LIMIT) {
+                put(key, Arrays.copyOf(rows, rowCount));
+            }
+            else {
+                long[] words = new long[WORDS];
+                for (int i = 0; i < rowCount; i++) words[rows[i] >>> 6] |= 1L << rows[i];
+                put(key, words);
+            }
+            rowCount = 0;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * ScaledColumn.java
+ *
+ * Fixed-point column: each value is held as value * 10^digits, minus the smallest such number
+ * in the column, in 16 bits per row.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class ScaledColumn extends WineColumn {
+    static final int MAX_CODE = Character.MAX_VALUE;
+
+    private final int digits;
+    private final double scale;
+    private final long base;
+    private char[] codes;
+
+    ScaledColumn(int digits, long base, double[] values, int size, int capacity) {
+        this.digits = digits;
+        this.scale = POWERS_OF_TEN[digits];
+        this.base = base;
+        this.codes = new char[Math.max(size, capacity)];
+        for (int row = 0; row < size; row++) {
+            codes[row] = (char) (units(values[row], digits) - base);
+        }
+    }
+
+    // Column taking over codes that have already been filled (see WineCellarSnapshot)
+    ScaledColumn(int digits, long base, char[] codes) {
+        this.digits = digits;
+        this.scale = POWERS_OF_TEN[digits];
+        this.base = base;
+        this.codes = codes;
+    }
+
+    public double get(int row) { return (base + codes[row]) / scale; }
+
+    int getCode(int row) { return codes[row]; }
+
+    int getDigits() { return digits; }
+
+    long getBase() { return base; }
+
+    boolean set(int row, double value) {
+        long units = units(value, digits);
+        if (units == Long.MIN_VALUE || units < base || units - base > MAX_CODE) return false;
+        codes[row] = (char) (units - base);
+        return true;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > codes.length) codes = Arrays.copyOf(codes, capacity);
+    }
+
+    public IntPredicate predicate(QueryOperator operator, double value) {
+        int[] bounds = bounds(value);
+        char[] column = codes;
+        return rangePredicate(operator, value, bounds[0], bounds[1], row -> column[row]);
+    }
+
+    public IntPredicate intervalPredicate(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        int[] lowBounds = bounds(low);
+        int[] highBounds = bounds(high);
+        char[] column = codes;
+        return codeRange(lowInclusive ? lowBounds[0] : lowBounds[1], highInclusive ? highBounds[1] : highBounds[0], row -> column[row]);
+    }
+
+    public void select(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside, long[] words, int from, int to) {
+        int[] lowBounds = bounds(low);
+        int[] highBounds = bounds(high);
+        select(lowInclusive ? lowBounds[0] : lowBounds[1], highInclusive ? highBounds[1] : highBounds[0], inside, words, from, to);
+    }
+
+    Selector selector(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside) {
+        int[] lowBounds = bounds(low);
+        int[] highBounds = bounds(high);
+        int lower = lowInclusive ? lowBounds[0] : lowBounds[1];
+        int upper = highInclusive ? highBounds[1] : highBounds[0];
+        return (words, from, to) -> select(lower, upper, inside, words, from, to);
+    }
+
+    // Mask of rows [from, to) whose codes are in [lower, upper), or outside it
+    private void select(int lower, int upper, boolean inside, long[] words, int from, int to) {
+        long flip = inside ? 0 : -1L;
+        char[] column = codes;
+        for (int w = 0, row = from; row < to; w++, row += 64) {
+            int n = Math.min(64, to - row);
+            long word = 0;
+            for (int b = 0; b < n; b++) {
+                word |= codeBit(column[row + b], lower, upper) << b;
+            }
+            words[w] &= word ^ flip;
+        }
+    }
+
+    // {lower, upper}: codes in [lower, upper) decode to value; found by stepping from the nearest code,
+    // comparing decoded doubles so that the result agrees exactly with double comparisons
+    private int[] bounds(double value) {
+        long nearest = Double.isNaN(value) ? 0 : (long) Math.max(-1, Math.min(MAX_CODE + 1, Math.rint(value * scale) - base));
+        long lower = nearest;
+        while (lower > 0 && (base + lower - 1) / scale >= value) lower--;
+        while (lower <= MAX_CODE && (base + lower) / scale < value) lower++;
+        long upper = Math.max(lower, 0);
+        while (upper <= MAX_CODE && (base + upper) / scale <= value) upper++;
+        return new int[] {(int) Math.max(lower, 0), (int) upper};
+    }
+}
@@ -0,0 +1,75 @@
+package assignment2019.codeprovided;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * SourceStamp.java
+ *
+ * What a cellar knows of the CSV file a rack was read from: the size and modification time the
+ * file had just before it was read, and how many bytes of it were read (see WineFileReader.readTail).
+ * A snapshot of the rack is only good while the file still has that size and modification time.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class SourceStamp {
+
+    // Instance variables
+    private final long size;
+    private final long modified;
+    private final long offset;
+
+    // Constructor
+    public SourceStamp(long size, long modified, long offset) {
+        this.size = size;
+        this.modified = modified;
+        this.offset = offset;
+    }
+
+    /**
+     * of method - stamps a file as it is now, before any of it is read
+     *
+     * @param filename path of the file
+     * @return SourceStamp of its size and modification time, or of 0 and 0 if it cannot be found
+     */
+    public static SourceStamp of(String filename) {
+        try {
+            Path file = Paths.get(filename);
+            return new SourceStamp(Files.size(file), Files.getLastModifiedTime(file).toMillis(), 0);
+        } catch (IOException e) {
+            return new SourceStamp(0, 0, 0);
+        }
+    }
+
+    /**
+     * withOffset method - the same stamp, once <code>offset</code> bytes of the file have been read
+     *
+     * @param offset number of bytes read
+     * @return SourceStamp with the new offset
+     */
+    public SourceStamp withOffset(long offset) {
+        return new SourceStamp(size, modified, offset);
+    }
+
+    // Getters
+    public long getSize() { return size; }
+    public long getModified() { return modified; }
+    public long getOffset() { return offset; }
+
+    /**
+     * matches method - whether a file still has the size and modification time of this stamp
+     *
+     * @param file path of the file
+     * @return true if the file exists and is unchanged
+     * @throws IOException if the file cannot be accessed
+     */
+    public boolean matches(Path file) throws IOException {
+        return Files.isRegularFile(file)
+            && Files.size(file) == size
+            && Files.getLastModifiedTime(file).toMillis() == modified;
+    }
+}
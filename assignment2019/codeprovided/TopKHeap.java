@@ -0,0 +1,167 @@
+package assignment2019.codeprovided;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * TopKHeap.java
+ *
+ * Keeps the first <code>limit</code> samples offered to it in the order of one property (ascending
+ * or descending), so that a query with a limit holds O(limit) samples however many match.
+ * Samples are offered in list order with a position that grows as they go, and samples that tie
+ * on the property are ordered by an optional comparator and then by position, i.e. as a stable
+ * sort would leave them. The heap's root is the worst sample kept, so a candidate that cannot
+ * beat it is turned away after a single comparison of primitive keys, without a sample being made.
+ * Keys are compared as by Double.compare (NaN after every number), as QueryEngine.order does.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+class TopKHeap {
+
+    // Instance variables: a binary heap, worst kept sample at the root
+    private final int limit;
+    private final boolean descending;
+    private final Comparator<WineSample> tieBreak;
+    private double[] keys;
+    private long[] positions;
+    private WineSample[] samples;
+    private int size;
+
+    // Constructor
+    TopKHeap(int limit, boolean descending, Comparator<WineSample> tieBreak) {
+        this.limit = limit;
+        this.descending = descending;
+        this.tieBreak = tieBreak;
+        int capacity = Math.min(limit, 16);
+        keys = new double[capacity];
+        positions = new long[capacity];
+        samples = new WineSample[capacity];
+    }
+
+    /**
+     * offer method - offers row <code>row</code> of a rack, made into a sample only if it is kept
+     *
+     * @param key the row's value of the property ordered by
+     * @param position the row's position in the list being queried, greater than any offered before
+     * @param rack the rack holding the row
+     * @param row the row
+     */
+    void offer(double key, long position, WineSampleRack rack, int row) {
+        if (size == limit && !canReplaceRoot(key)) {
+            return;
+        }
+        offer(key, position, rack.get(row));
+    }
+
+    /**
+     * offer method - offers a sample
+     *
+     * @param key the sample's value of the property ordered by
+     * @param position the sample's position in the list being queried, greater than any offered before
+     * @param sample the sample
+     */
+    void offer(double key, long position, WineSample sample) {
+        if (size < limit) {
+            if (size == keys.length) {
+                int capacity = (int) Math.min(limit, size * 2L);
+                keys = Arrays.copyOf(keys, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+                samples = Arrays.copyOf(samples, capacity);
+            }
+            set(size, key, position, sample);
+            siftUp(size++);
+        }
+        else if (limit > 0 && compare(key, sample, position, 0) < 0) {
+            set(0, key, position, sample);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * toList method - the samples kept, best first
+     *
+     * @return List of at most <code>limit</code> samples
+     */
+    List<WineSample> toList() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(keys[a], samples[a], positions[a], b));
+        List<WineSample> list = new ArrayList<>(size);
+        for (int i : order) {
+            list.add(samples[i]);
+        }
+        return list;
+    }
+
+    // Whether a candidate with this key could come before the root: later positions lose ties, so
+    // without a tie-breaking comparator only a strictly better key can
+    private boolean canReplaceRoot(double key) {
+        if (limit == 0) {
+            return false;
+        }
+        int c = compareKeys(key, keys[0]);
+        return c < 0 || (c == 0 && tieBreak != null);
+    }
+
+    // Order of a candidate against the sample held at <code>at</code>: negative if the candidate comes first
+    private int compare(double key, WineSample sample, long position, int at) {
+        int c = compareKeys(key, keys[at]);
+        if (c == 0 && tieBreak != null) {
+            c = tieBreak.compare(sample, samples[at]);
+        }
+        return c != 0 ? c : Long.compare(position, positions[at]);
+    }
+
+    private int compareKeys(double a, double b) {
+        int c = Double.compare(a, b);
+        return descending ? -c : c;
+    }
+
+    private void set(int at, double key, long position, WineSample sample) {
+        keys[at] = key;
+        positions[at] = position;
+        samples[at] = sample;
+    }
+
+    private void swap(int i, int j) {
+        double key = keys[i];
+        long position = positions[i];
+        WineSample sample = samples[i];
+        set(i, keys[j], positions[j], samples[j]);
+        set(j, key, position, sample);
+    }
+
+    // A heap entry moves towards the root while it comes after its parent
+    private void siftUp(int at) {
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (compare(keys[at], samples[at], positions[at], parent) <= 0) {
+                return;
+            }
+            swap(at, parent);
+            at = parent;
+        }
+    }
+
+    private void siftDown(int at) {
+        while (true) {
+            int worst = at;
+            for (int child = 2 * at + 1; child <= 2 * at + 2 && child < size; child++) {
+                if (compare(keys[child], samples[child], positions[child], worst) > 0) {
+                    worst = child;
+                }
+            }
+            if (worst == at) {
+                return;
+            }
+            swap(at, worst);
+            at = worst;
+        }
+    }
+}
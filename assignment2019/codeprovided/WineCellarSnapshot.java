@@ -0,0 +1,495 @@
+package assignment2019.codeprovided;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * WineCellarSnapshot.java
+ *
+ * Compact, versioned binary copy of the racks of a loaded cellar, so that a later start-up
+ * can map it back in rather than parsing the CSV files again.
+ * <p>
+ * Layout (little-endian throughout):
+ * <pre>
+ *   header     magic, version, partition count, CRC32 of everything after the header
+ *   partitions per WineType: type, rows, source file size and mtime (as they were when it was read),
+ *              bytes of the source read, data offset, source path
+ *   data       per partition, 8-byte aligned: highest id, rows when last compacted (see
+ *              WineSampleRack.compact), int ids[rows], then per WineProperty:
+ *              column     encoding, digits or dictionary size, base, min, max and sum of the column,
+ *                         the dictionary, then the values as stored: double[rows], or the codes of
+ *                         a DictionaryColumn (byte[rows]) or a ScaledColumn (char[rows])
+ *              histogram  whether it is exact, entry count, min, max, then its values (if exact)
+ *                         and counts (see ColumnHistogram)
+ * </pre>
+ * Columns are saved in the encoding they have in the rack, so a rack opened from a snapshot
+ * takes them over as they are, along with its statistics and histograms: nothing is re-encoded,
+ * rescanned or counted again. An off-heap rack decodes encoded columns into its direct buffers.
+ * A snapshot is only used while every source file still has the size and modification time
+ * recorded in it; otherwise (or if it is damaged) open() returns null and the caller falls back to CSV.
+ * It is written to a temporary file that is then renamed over the old one, so a reader never
+ * sees a half-written snapshot. Saving streams each column out through one block-sized buffer,
+ * and opening maps the file a window of at most MAP_WINDOW bytes at a time (a single mapping
+ * cannot exceed 2GB), reading each block once, checksumming it and copying it into the rack
+ * while it is still in cache.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class WineCellarSnapshot {
+
+    private static final long MAGIC = 0x50414e53454e4957L; // "WINESNAP"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 24;
+    // Most bytes the partition table is expected to take, i.e. how much of the file to map to read it
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+    // Bytes checksummed and copied at a time when a snapshot is opened
+    private static final int BLOCK_SIZE = 1 << 16;
+    // Most bytes mapped at once when a snapshot is opened (a whole number of blocks)
+    private static final int MAP_WINDOW = 1 << 30;
+    // How a column's values are stored, and the bytes before them and before a histogram's entries
+    private static final int DOUBLES = 0, DICTIONARY = 1, SCALED = 2;
+    private static final int COLUMN_HEADER_SIZE = 40;
+    private static final int HISTOGRAM_HEADER_SIZE = 24;
+
+    /**
+     * save method - writes the racks to <code>snapshotFile</code>, recording the stamp of the file
+     * each one was read from. Histograms not built yet are built, so that they need not be on open.
+     *
+     * @param snapshotFile path of the snapshot to (over)write
+     * @param racks the racks to save, by WineType
+     * @param sources the CSV file each rack was read from, by WineType
+     * @param stamps the state each of those files was in when it was read, by WineType
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void save(String snapshotFile, Map<WineType, WineSampleRack> racks, Map<WineType, String> sources,
+                            Map<WineType, SourceStamp> stamps) throws IOException {
+        // Partition table first, so that the data offsets are known
+        List<WineType> types = new ArrayList<>(racks.keySet());
+        List<byte[]> paths = new ArrayList<>();
+        int tableSize = 0;
+        for (WineType type : types) {
+            byte[] path = sources.get(type).getBytes(StandardCharsets.UTF_8);
+            paths.add(path);
+            tableSize += (int) align(4 + 4 + 8 + 8 + 8 + 8 + 4 + path.length);
+        }
+        ByteBuffer table = ByteBuffer.allocate(tableSize).order(ByteOrder.LITTLE_ENDIAN);
+        long offset = HEADER_SIZE + tableSize;
+        for (int t = 0; t < types.size(); t++) {
+            WineSampleRack rack = racks.get(types.get(t));
+            SourceStamp stamp = stamps.get(types.get(t));
+            table.putInt(types.get(t).ordinal());
+            table.putInt(rack.size());
+            table.putLong(stamp.getSize());
+            table.putLong(stamp.getModified());
+            table.putLong(stamp.getOffset());
+            table.putLong(offset);
+            table.putInt(paths.get(t).length);
+            table.put(paths.get(t));
+            table.position((int) align(table.position()));
+            offset += dataSize(rack);
+        }
+        table.flip();
+
+        // Written beside the snapshot, then renamed over it once complete
+        Path target = Paths.get(snapshotFile).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            write(temporary, types, racks, table);
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Writes the partition table and the data of the racks to a new file, a block at a time, header last
+    private static void write(Path file, List<WineType> types, Map<WineType, WineSampleRack> racks, ByteBuffer table) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            write(channel, table, checksum);
+            ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (WineType type : types) {
+                WineSampleRack rack = racks.get(type);
+                int rows = rack.size();
+                block.putInt(rack.getMaxId()).putInt(rack.getCompactedSize());
+                for (int row = 0; row < rows; row++) {
+                    if (!block.hasRemaining()) {
+                        flush(channel, block, checksum);
+                    }
+                    block.putInt(rack.getId(row));
+                }
+                pad(block);
+                flush(channel, block, checksum);
+                for (WineProperty property : WineProperty.values()) {
+                    writeColumn(channel, block, checksum, rack, property);
+                    writeHistogram(channel, block, checksum, rack.getHistogram(property));
+                }
+            }
+            // Header goes in last, once the checksum is known
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).putInt(types.size()).putLong(checksum.getValue()).flip();
+            channel.write(header, 0);
+            // on disk before the rename makes it the snapshot
+            channel.force(true);
+        }
+    }
+
+    // Writes one column of a rack in the encoding it has, with its statistics
+    private static void writeColumn(FileChannel channel, ByteBuffer block, CRC32 checksum, WineSampleRack rack, WineProperty property) throws IOException {
+        WineColumn column = rack.getColumn(property);
+        int rows = rack.size();
+        int kind = kind(column);
+        double[] dictionary = kind == DICTIONARY ? ((DictionaryColumn) column).getDictionary() : new double[0];
+        block.putInt(kind);
+        block.putInt(kind == SCALED ? ((ScaledColumn) column).getDigits() : dictionary.length);
+        block.putLong(kind == SCALED ? ((ScaledColumn) column).getBase() : 0);
+        block.putDouble(rack.getMin(property)).putDouble(rack.getMax(property)).putDouble(rack.getSum(property));
+        for (double entry : dictionary) {
+            if (!block.hasRemaining()) {
+                flush(channel, block, checksum);
+            }
+            block.putDouble(entry);
+        }
+        for (int row = 0; row < rows; row++) {
+            if (!block.hasRemaining()) {
+                flush(channel, block, checksum);
+            }
+            if (kind == DICTIONARY) {
+                block.put((byte) ((DictionaryColumn) column).getCode(row));
+            }
+            else if (kind == SCALED) {
+                block.putChar((char) ((ScaledColumn) column).getCode(row));
+            }
+            else {
+                block.putDouble(column.get(row));
+            }
+        }
+        pad(block);
+        flush(channel, block, checksum);
+    }
+
+    private static void writeHistogram(FileChannel channel, ByteBuffer block, CRC32 checksum, ColumnHistogram histogram) throws IOException {
+        double[] values = histogram.getValues();
+        int[] counts = histogram.getCounts();
+        block.putInt(values != null ? 1 : 0).putInt(counts.length);
+        block.putDouble(histogram.getMin()).putDouble(histogram.getMax());
+        if (values != null) {
+            for (double value : values) {
+                block.putDouble(value);
+            }
+        }
+        for (int count : counts) {
+            block.putInt(count);
+        }
+        pad(block);
+        flush(channel, block, checksum);
+    }
+
+    /**
+     * open method - maps <code>snapshotFile</code> and rebuilds its racks, provided it was
+     * taken from exactly the given source files in their current state
+     *
+     * @param snapshotFile path of the snapshot
+     * @param sources the CSV file each rack should come from, by WineType
+     * @param stamps receives the stamp each rack's file was saved with, if the racks are returned
+     * @return the racks by WineType, or null if the snapshot is missing, stale, or damaged
+     * @throws IOException if the snapshot exists but cannot be read
+     */
+    public static Map<WineType, WineSampleRack> open(String snapshotFile, Map<WineType, String> sources,
+                                                     Map<WineType, SourceStamp> stamps) throws IOException {
+        Path path = Paths.get(snapshotFile);
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int partitions = header.getInt();
+            long expectedChecksum = header.getLong();
+            CRC32 checksum = new CRC32();
+
+            // Read and check the partition table against the source files as they are now
+            List<long[]> entries = new ArrayList<>();
+            Map<WineType, SourceStamp> seen = new EnumMap<>(WineType.class);
+            ByteBuffer table = map(channel, HEADER_SIZE, Math.min(channel.size() - HEADER_SIZE, MAX_TABLE_SIZE));
+            for (int t = 0; t < partitions; t++) {
+                int type = table.getInt();
+                int rows = table.getInt();
+                long size = table.getLong();
+                long modified = table.getLong();
+                long read = table.getLong();
+                long offset = table.getLong();
+                byte[] source = new byte[table.getInt()];
+                table.get(source);
+                table.position((int) align(table.position()));
+                if (type < 0 || type >= WineType.values().length) {
+                    return null;
+                }
+                WineType wineType = WineType.values()[type];
+                String expected = sources.get(wineType);
+                SourceStamp stamp = new SourceStamp(size, modified, read);
+                if (expected == null || !expected.equals(new String(source, StandardCharsets.UTF_8)) || !stamp.matches(Paths.get(expected))) {
+                    return null;
+                }
+                seen.put(wineType, stamp);
+                entries.add(new long[] {type, rows, offset});
+            }
+            if (!seen.keySet().equals(sources.keySet())) {
+                return null;
+            }
+            table.limit(table.position()).position(0);
+            checksum.update(table);
+
+            // Map each partition in turn, a window at a time, and take it over into a rack, checksumming it on the way
+            Map<WineType, WineSampleRack> racks = new EnumMap<>(WineType.class);
+            for (long[] entry : entries) {
+                WineType wineType = WineType.values()[(int) entry[0]];
+                racks.put(wineType, new PartitionReader(channel, entry[2], (int) entry[1], checksum).read(wineType));
+            }
+            if (checksum.getValue() != expectedChecksum) {
+                return null;
+            }
+            stamps.putAll(seen);
+            return racks;
+
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException
+                 | ClassCastException | ArithmeticException | EOFException e) {
+            // a truncated or mangled file is treated like a stale one
+            return null;
+        }
+    }
+
+    /**
+     * PartitionReader.java
+     *
+     * Reads one partition's data back, section by section from its offset, into a heap or an
+     * off-heap rack, along with the statistics and histograms saved with it.
+     */
+    private static class PartitionReader {
+
+        private final FileChannel channel;
+        private final int rows;
+        private final CRC32 checksum;
+        // where the next section starts
+        private long position;
+
+        PartitionReader(FileChannel channel, long offset, int rows, CRC32 checksum) {
+            this.channel = channel;
+            this.position = offset;
+            this.rows = rows;
+            this.checksum = checksum;
+        }
+
+        WineSampleRack read(WineType wineType) throws IOException {
+            ByteBuffer partition = small(8);
+            int maxId = partition.getInt();
+            int compactedSize = partition.getInt();
+            boolean offHeap = WineSampleRack.isOffHeap();
+            int[] ids = offHeap ? null : new int[rows];
+            OffHeapColumn offHeapIds = offHeap ? new OffHeapColumn(Integer.BYTES, rows) : null;
+            read(align(rows * 4L), (block, at) -> {
+                int count = (int) Math.min(block.remaining() / 4, rows - at / 4);
+                if (offHeap) {
+                    offHeapIds.put((int) (at / 4), block, count);
+                }
+                else {
+                    block.asIntBuffer().get(ids, (int) (at / 4), count);
+                }
+            });
+            int n = WineSampleRack.NUMBER_OF_PROPERTIES;
+            WineColumn[] columns = new WineColumn[n];
+            OffHeapColumn[] offHeapColumns = new OffHeapColumn[n];
+            double[] min = new double[n], max = new double[n], sum = new double[n];
+            ColumnHistogram[] histograms = new ColumnHistogram[n];
+            for (int p = 0; p < n; p++) {
+                ByteBuffer column = small(COLUMN_HEADER_SIZE);
+                int kind = column.getInt();
+                int parameter = column.getInt();
+                long base = column.getLong();
+                min[p] = column.getDouble();
+                max[p] = column.getDouble();
+                sum[p] = column.getDouble();
+                if (offHeap) {
+                    offHeapColumns[p] = readOffHeapColumn(kind, parameter, base);
+                }
+                else {
+                    columns[p] = readColumn(kind, parameter, base);
+                }
+                histograms[p] = readHistogram();
+            }
+            WineSampleRack rack = offHeap
+                ? new WineSampleRack(wineType, offHeapIds, offHeapColumns, rows)
+                : new WineSampleRack(wineType, ids, columns, rows);
+            rack.restore(min, max, sum, maxId, histograms, compactedSize);
+            return rack;
+        }
+
+        // Heap column in the encoding it was saved in
+        private WineColumn readColumn(int kind, int parameter, long base) throws IOException {
+            switch (kind) {
+                case DOUBLES: {
+                    double[] values = new double[rows];
+                    read(rows * 8L, (block, at) -> block.asDoubleBuffer().get(values, (int) (at / 8), block.remaining() / 8));
+                    return new DoubleColumn(values);
+                }
+                case DICTIONARY: {
+                    double[] dictionary = doubles(parameter);
+                    byte[] codes = new byte[rows];
+                    read(align(rows), (block, at) -> block.get(codes, (int) at, (int) Math.min(block.remaining(), rows - at)));
+                    return new DictionaryColumn(dictionary, codes);
+                }
+                case SCALED: {
+                    char[] codes = new char[rows];
+                    read(align(rows * 2L), (block, at) ->
+                        block.asCharBuffer().get(codes, (int) (at / 2), (int) Math.min(block.remaining() / 2, rows - at / 2)));
+                    return new ScaledColumn(parameter, base, codes);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown column encoding " + kind);
+            }
+        }
+
+        // Off-heap column of plain doubles: saved doubles go straight into the direct buffers, encoded ones
+        // are decoded through the heap column they were saved from
+        private OffHeapColumn readOffHeapColumn(int kind, int parameter, long base) throws IOException {
+            OffHeapColumn column = new OffHeapColumn(Double.BYTES, rows);
+            if (kind == DOUBLES) {
+                read(rows * 8L, (block, at) -> column.put((int) (at / 8), block, block.remaining() / 8));
+                return column;
+            }
+            WineColumn encoded = readColumn(kind, parameter, base);
+            for (int row = 0; row < rows; row++) {
+                column.set(row, encoded.get(row));
+            }
+            return column;
+        }
+
+        private ColumnHistogram readHistogram() throws IOException {
+            ByteBuffer histogram = small(HISTOGRAM_HEADER_SIZE);
+            boolean exact = histogram.getInt() != 0;
+            int entries = histogram.getInt();
+            double low = histogram.getDouble();
+            double high = histogram.getDouble();
+            double[] values = exact ? doubles(entries) : null;
+            ByteBuffer counts = small(align(entries * 4L));
+            int[] histogramCounts = new int[entries];
+            counts.asIntBuffer().get(histogramCounts);
+            return new ColumnHistogram(rows, values, histogramCounts, low, high);
+        }
+
+        private double[] doubles(int count) throws IOException {
+            double[] values = new double[count];
+            small(count * 8L).asDoubleBuffer().get(values);
+            return values;
+        }
+
+        // Reads a short section (a header, a dictionary or a histogram) into a heap buffer, checksummed
+        private ByteBuffer small(long length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            bytes.flip();
+            checksum.update(bytes.duplicate());
+            position += length;
+            return bytes;
+        }
+
+        // Maps the <code>length</code> bytes of the next section a window at a time and hands them over to
+        // <code>copy</code> a block at a time, each one checksummed just before it is copied
+        private void read(long length, BlockCopy copy) throws IOException {
+            for (long window = 0; window < length; window += MAP_WINDOW) {
+                ByteBuffer bytes = map(channel, position + window, Math.min(MAP_WINDOW, length - window));
+                for (int at = 0; at < bytes.limit(); at += BLOCK_SIZE) {
+                    ByteBuffer block = bytes.slice(at, Math.min(BLOCK_SIZE, bytes.limit() - at)).order(ByteOrder.LITTLE_ENDIAN);
+                    checksum.update(block.duplicate());
+                    copy.copy(block, window + at);
+                }
+            }
+            position += length;
+        }
+    }
+
+    // Copies one block of a section, starting <code>at</code> bytes into it, to where it belongs
+    private interface BlockCopy {
+        void copy(ByteBuffer block, long at);
+    }
+
+    // How a column is saved
+    private static int kind(WineColumn column) {
+        return column instanceof DictionaryColumn ? DICTIONARY : column instanceof ScaledColumn ? SCALED : DOUBLES;
+    }
+
+    // Bytes taken by one partition's data: highest id and rows compacted, ids (padded to 8 bytes), then each column and its histogram
+    private static long dataSize(WineSampleRack rack) {
+        int rows = rack.size();
+        long size = 8 + align(rows * 4L);
+        for (WineProperty property : WineProperty.values()) {
+            WineColumn column = rack.getColumn(property);
+            switch (kind(column)) {
+                case DICTIONARY:
+                    size += COLUMN_HEADER_SIZE + ((DictionaryColumn) column).getDictionary().length * 8L + align(rows);
+                    break;
+                case SCALED:
+                    size += COLUMN_HEADER_SIZE + align(rows * 2L);
+                    break;
+                default:
+                    size += COLUMN_HEADER_SIZE + rows * 8L;
+            }
+            ColumnHistogram histogram = rack.getHistogram(property);
+            int entries = histogram.getCounts().length;
+            size += HISTOGRAM_HEADER_SIZE + (histogram.getValues() != null ? entries * 8L : 0) + align(entries * 4L);
+        }
+        return size;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    // Pads what has been put in <code>block</code> since it was last flushed to 8 bytes (a block is a whole number of 8 bytes)
+    private static void pad(ByteBuffer block) {
+        while (block.position() % 8 != 0) {
+            block.put((byte) 0);
+        }
+    }
+
+    // Writes out what has been put in <code>block</code>, leaving it empty for the next
+    private static void flush(FileChannel channel, ByteBuffer block, CRC32 checksum) throws IOException {
+        block.flip();
+        write(channel, block, checksum);
+        block.clear();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
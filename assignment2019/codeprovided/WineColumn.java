@@ -0,0 +1,234 @@
+package assignment2019.codeprovided;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * WineColumn.java
+ *
+ * One property column of a WineSampleRack, indexed by row. Besides plain doubles, a column can
+ * hold its values encoded, as the CSV values only ever have a handful of significant digits:
+ * <ul>
+ *   <li>DictionaryColumn - columns with at most 256 distinct values (e.g. quality) keep a sorted
+ *       dictionary and one byte per row</li>
+ *   <li>ScaledColumn - fixed-point: each value times 10^digits (digits chosen per column), stored as
+ *       a 16-bit offset from the column minimum</li>
+ *   <li>DoubleColumn - everything else</li>
+ * </ul>
+ * Racks created off-heap use OffHeapColumn, plain doubles held in direct buffers.
+ * Encoding is lossless: decoding a value gives back exactly the double that was parsed.
+ * Conditions are turned into predicates on the encoded values, so that e.g. <code>alc = 13</code>
+ * is an integer comparison on the codes rather than an equality test between doubles.
+ * For whole scans, select evaluates an interval over a block of rows at a time into a selection
+ * mask, 64 rows to a long, with branch-free loops over the primitive arrays that the JIT can
+ * unroll and vectorise; the row predicates remain the fallback.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public abstract class WineColumn {
+
+    // Most decimal digits looked for when choosing the scale of a ScaledColumn
+    static final int MAX_DIGITS = 8;
+    static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8 };
+    private static final double MAX_EXACT_UNITS = 1L << 53;
+
+    /**
+     * Getter for the value held at <code>row</code>
+     *
+     * @param row index of the sample in the rack
+     * @return the decoded value
+     */
+    public abstract double get(int row);
+
+    /**
+     * predicate method - turns a condition on this column into a test on row numbers,
+     * evaluated on the column's own (possibly encoded) values.
+     * Matches exactly the rows for which comparing the decoded double would succeed.
+     *
+     * @param operator the comparison, or null (for an unrecognised operator) to match nothing
+     * @param value the value to compare with
+     * @return predicate accepting the row numbers that satisfy the condition
+     */
+    public abstract IntPredicate predicate(QueryOperator operator, double value);
+
+    /**
+     * intervalPredicate method - turns a pair of bounds on this column, such as the conditions
+     * <code>alc > 10 and alc <= 12</code>, into a single test on row numbers. Encoded columns
+     * check one range of codes; others test both bounds. NaN lies in no interval.
+     *
+     * @param low lower bound (may be negative infinity)
+     * @param lowInclusive whether a value equal to <code>low</code> is in the interval
+     * @param high upper bound (may be positive infinity)
+     * @param highInclusive whether a value equal to <code>high</code> is in the interval
+     * @return predicate accepting the row numbers whose value lies in the interval
+     */
+    public IntPredicate intervalPredicate(double low, boolean lowInclusive, double high, boolean highInclusive) {
+        IntPredicate above = predicate(lowInclusive ? QueryOperator.GREATER_OR_EQUAL : QueryOperator.GREATER, low);
+        return above.and(predicate(highInclusive ? QueryOperator.LESS_OR_EQUAL : QueryOperator.LESS, high));
+    }
+
+    /**
+     * select method - evaluates an interval over rows [from, to), ANDing one bit per row into a
+     * selection mask: bit b of <code>words[w]</code> stands for row <code>from + 64 * w + b</code>.
+     * This default tests each row with intervalPredicate; columns held in arrays override it with
+     * branch-free loops. NaN lies in no interval, so is kept by <code>inside == false</code>, as by !=.
+     *
+     * @param low lower bound (may be negative infinity)
+     * @param lowInclusive whether a value equal to <code>low</code> is in the interval
+     * @param high upper bound (may be positive infinity)
+     * @param highInclusive whether a value equal to <code>high</code> is in the interval
+     * @param inside true to keep the rows in the interval, false to keep the rows outside it
+     * @param words the selection mask, one word per 64 rows from <code>from</code>
+     * @param from first row
+     * @param to row just past the last
+     */
+    public void select(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside, long[] words, int from, int to) {
+        IntPredicate test = intervalPredicate(low, lowInclusive, high, highInclusive);
+        long flip = inside ? 0 : -1L;
+        for (int w = 0, row = from; row < to; w++, row += 64) {
+            int n = Math.min(64, to - row);
+            long word = 0;
+            for (int b = 0; b < n; b++) {
+                if (test.test(row + b)) word |= 1L << b;
+            }
+            words[w] &= word ^ flip;
+        }
+    }
+
+    // select with its bounds fixed, so that a scan of many blocks works out what they mean for the column once
+    Selector selector(double low, boolean lowInclusive, double high, boolean highInclusive, boolean inside) {
+        return (words, from, to) -> select(low, lowInclusive, high, highInclusive, inside, words, from, to);
+    }
+
+    // Stores a value at a row, returning false if the encoding cannot hold it (the rack then re-encodes)
+    abstract boolean set(int row, double value);
+
+    // Makes room for at least <code>capacity</code> rows
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * copyTo method - decodes rows [0, count) into <code>target</code>
+     *
+     * @param target array to fill
+     * @param count number of rows to copy
+     */
+    public void copyTo(double[] target, int count) {
+        for (int row = 0; row < count; row++) {
+            target[row] = get(row);
+        }
+    }
+
+    // The first <code>count</code> values, in an array that may be the column's own and must not be written to
+    double[] decode(int count) {
+        double[] values = new double[count];
+        copyTo(values, count);
+        return values;
+    }
+
+    /**
+     * encode method - chooses the most compact column that holds the first <code>size</code>
+     * values exactly: a dictionary for up to 256 distinct values, a fixed-point column if every
+     * value has few enough decimal digits, and plain doubles otherwise
+     *
+     * @param values the values, by row
+     * @param size number of rows in use
+     * @param capacity number of rows to make room for
+     * @return a new column holding the values
+     */
+    static WineColumn encode(double[] values, int size, int capacity) {
+        double[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (Double.isNaN(sorted[i]) || Double.isInfinite(sorted[i])) {
+                return new DoubleColumn(values, size, capacity);
+            }
+            if (i == 0 || Double.compare(sorted[i], sorted[i - 1]) != 0) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        if (distinct <= DictionaryColumn.MAX_ENTRIES) {
+            return new DictionaryColumn(Arrays.copyOf(sorted, distinct), values, size, capacity);
+        }
+        // the scale is set by the value needing the most decimal digits
+        int digits = 0;
+        for (int i = 0; i < distinct; i++) {
+            while (digits <= MAX_DIGITS && units(sorted[i], digits) == Long.MIN_VALUE) {
+                digits++;
+            }
+            if (digits > MAX_DIGITS) {
+                return new DoubleColumn(values, size, capacity);
+            }
+        }
+        long base = units(sorted[0], digits);
+        if (units(sorted[distinct - 1], digits) - base > ScaledColumn.MAX_CODE) {
+            return new DoubleColumn(values, size, capacity);
+        }
+        return new ScaledColumn(digits, base, values, size, capacity);
+    }
+
+    /**
+     * units method - the value as an exact multiple of 10^-digits
+     *
+     * @return value * 10^digits, or Long.MIN_VALUE if that does not give back exactly <code>value</code>
+     */
+    static long units(double value, int digits) {
+        double scaled = value * POWERS_OF_TEN[digits];
+        if (Double.isNaN(scaled) || Math.abs(scaled) >= MAX_EXACT_UNITS) {
+            return Long.MIN_VALUE;
+        }
+        long units = Math.round(scaled);
+        return units / POWERS_OF_TEN[digits] == value ? units : Long.MIN_VALUE;
+    }
+
+    // Row test matching codes in [lower, upper) for =, and the corresponding ranges for the other operators
+    static IntPredicate rangePredicate(QueryOperator operator, double value, int lower, int upper, CodeReader codes) {
+        if (operator == null) {
+            return row -> false;
+        }
+        if (Double.isNaN(value)) {
+            // nothing compares true with NaN, except for !=
+            return operator == QueryOperator.NOT_EQUAL ? row -> true : row -> false;
+        }
+        switch (operator) {
+            case GREATER:
+                return row -> codes.code(row) >= upper;
+            case GREATER_OR_EQUAL:
+                return row -> codes.code(row) >= lower;
+            case LESS:
+                return row -> codes.code(row) < lower;
+            case LESS_OR_EQUAL:
+                return row -> codes.code(row) < upper;
+            case EQUAL:
+                return row -> { int code = codes.code(row); return code >= lower && code < upper; };
+            default:
+                return row -> { int code = codes.code(row); return code < lower || code >= upper; };
+        }
+    }
+
+    // Row test matching codes in [from, to), for the interval predicates of encoded columns
+    static IntPredicate codeRange(int from, int to, CodeReader codes) {
+        if (from >= to) {
+            return row -> false;
+        }
+        return row -> { int code = codes.code(row); return code >= from && code < to; };
+    }
+
+    // Bit per row for codes in [lower, upper): 1 when 0 <= code - lower < upper - lower, without a branch
+    static long codeBit(int code, int lower, int upper) {
+        long offset = code - lower;
+        return ((offset - (upper - lower)) & ~offset) >>> 63;
+    }
+
+    // Access to the integer code of a row, for rangePredicate and codeRange
+    interface CodeReader {
+        int code(int row);
+    }
+
+    // A select over rows [from, to) with its interval already fixed (see selector)
+    interface Selector {
+        void select(long[] words, int from, int to);
+    }
+}
@@ -0,0 +1,705 @@
+package assignment2019.codeprovided;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * WineFileReader.java
+ *
+ * Reads a wine sample CSV file by memory-mapping it and scanning the bytes directly.
+ * Values are decoded by a hand-written ASCII decimal parser and written straight into
+ * a WineSampleRack, so no String is created per line (or per value) on the common path.
+ * Follows the same rules as AbstractWineSampleCellar.readWineFile: the first line is a
+ * header, each line must have 12 columns, and ids are assigned sequentially from 1 to
+ * the lines that parse.
+ * Gzip-compressed files cannot be mapped, so readCompressed streams them instead: one thread
+ * inflates the file into blocks of whole lines while the blocks already inflated are parsed.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class WineFileReader {
+
+    private static final int NUMBER_OF_COLUMNS = 12;
+    // Largest region mapped at once (a single mapping cannot exceed 2GB)
+    private static final long WINDOW_SIZE = 1L << 30;
+    // Exact powers of ten; dividing an exact mantissa by one of these is correctly rounded
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // Smallest byte range worth parsing as a task of its own in readParallel
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+    // How many chunks to aim for per worker thread, so that uneven chunks still balance out
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Decompressed bytes handed to the parser at a time by readCompressed
+    private static final int BLOCK_SIZE = 1 << 20;
+    // Blocks that may be waiting to be parsed, or being parsed, at once; the decompressor waits beyond that
+    private static final int BLOCKS_IN_FLIGHT = 8;
+
+    // Instance variables
+    private final WineSampleRack rack;
+    private final double[] values = new double[NUMBER_OF_COLUMNS];
+    private int nextId;
+
+    // Constructor
+    public WineFileReader(WineSampleRack rack, int firstId) {
+        this.rack = rack;
+        this.nextId = firstId;
+    }
+
+    /**
+     * read method - memory-maps <code>wineFile</code> and returns its samples as a rack
+     *
+     * @param wineFile path of the CSV file
+     * @param wineType the wine type of every sample in the file
+     * @return WineSampleRack holding the samples in file order
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file is empty or a line does not have 12 columns
+     */
+    public static WineSampleRack read(String wineFile, WineType wineType) throws IOException {
+        WineSampleRack rack = new WineSampleRack(wineType);
+        read(wineFile, rack, Long.MAX_VALUE);
+        return rack;
+    }
+
+    /**
+     * read method - as above, but reads only the lines among the first <code>limit</code> bytes of
+     * the file into an empty <code>rack</code>, e.g. leaving those appended after its size was taken
+     * (see AbstractWineSampleCellar.tailWineList). A line cut off by the limit, or a last line without
+     * its newline, is left alone as it may still be being written; readTail picks it up from the
+     * returned offset once it is finished. With no limit (Long.MAX_VALUE) the file is taken to be
+     * complete, and a last line without its newline is read as well.
+     *
+     * @param wineFile path of the CSV file
+     * @param rack the empty rack to fill
+     * @param limit number of bytes to read at most, or Long.MAX_VALUE for the whole file
+     * @return offset just past the last line read
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file is empty or a line does not have 12 columns
+     */
+    public static long read(String wineFile, WineSampleRack rack, long limit) throws IOException {
+        boolean whole = limit == Long.MAX_VALUE;
+        try (FileChannel channel = FileChannel.open(Paths.get(wineFile), StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), limit);
+            if (size == 0) {
+                throw new IllegalArgumentException("File is empty. Please, provide a valid dataset.");
+            }
+            WineFileReader reader = new WineFileReader(rack, 1);
+            boolean header = true;
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(WINDOW_SIZE, size - position);
+                boolean end = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int from = 0;
+                if (header) {
+                    from = skipLine(buffer, 0, (int) length);
+                    if (end && !whole && buffer.get(from - 1) != '\n') {
+                        return 0; // not even the header is finished yet
+                    }
+                    header = false;
+                }
+                int consumed = reader.parseLines(buffer, from, (int) length, whole && end);
+                if (end) {
+                    return position + consumed;
+                }
+                if (consumed == 0) {
+                    throw new IllegalArgumentException("Inadequate file format. Please, provide a valid dataset.");
+                }
+                position += consumed;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * readParallel method - as read, but splits the file into newline-aligned byte ranges that
+     * are mapped and parsed as separate tasks on the common ForkJoinPool. Each range fills a rack
+     * of its own; the racks are then stitched together in file order, shifting their ids so that
+     * every sample gets exactly the id the sequential reader would have given it.
+     *
+     * @param wineFile path of the CSV file
+     * @param wineType the wine type of every sample in the file
+     * @return WineSampleRack holding the samples in file order
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file is empty or a line does not have 12 columns
+     */
+    public static WineSampleRack readParallel(String wineFile, WineType wineType) throws IOException {
+        WineSampleRack rack = new WineSampleRack(wineType);
+        readParallel(wineFile, rack, Long.MAX_VALUE);
+        return rack;
+    }
+
+    /**
+     * readParallel method - as above, but like read(wineFile, rack, limit) reads only the finished
+     * lines among the first <code>limit</code> bytes of the file into an empty <code>rack</code>
+     *
+     * @param wineFile path of the CSV file
+     * @param rack the empty rack to fill
+     * @param limit number of bytes to read at most, or Long.MAX_VALUE for the whole file
+     * @return offset just past the last line read
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the file is empty or a line does not have 12 columns
+     */
+    public static long readParallel(String wineFile, WineSampleRack rack, long limit) throws IOException {
+        boolean whole = limit == Long.MAX_VALUE;
+        try (FileChannel channel = FileChannel.open(Paths.get(wineFile), StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), limit);
+            if (size == 0) {
+                throw new IllegalArgumentException("File is empty. Please, provide a valid dataset.");
+            }
+            // Cut the data (after the header) into ranges, each ending just past a newline
+            long chunkSize = (size / (ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD)) + 1;
+            chunkSize = Math.min(Math.max(chunkSize, MIN_CHUNK_SIZE), WINDOW_SIZE);
+            List<ChunkTask> chunks = new ArrayList<>();
+            long start = nextLine(channel, 0, size);
+            if (start == size && !whole && !endsLine(channel, size)) {
+                return 0; // not even the header is finished yet
+            }
+            while (start < size) {
+                long end = start + chunkSize >= size ? size : nextLine(channel, start + chunkSize - 1, size);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Inadequate file format. Please, provide a valid dataset.");
+                }
+                chunks.add(new ChunkTask(channel, rack.getWineType(), start, end, whole && end == size));
+                start = end;
+            }
+            try {
+                ForkJoinTask.invokeAll(chunks);
+            } catch (RuntimeException e) {
+                throw unwrap(e);
+            }
+
+            // Stitch the partial racks together, numbering on from where the previous one stopped
+            int total = rack.size();
+            for (ChunkTask chunk : chunks) {
+                total += chunk.getRawResult().size();
+            }
+            rack.ensureCapacity(total);
+            for (ChunkTask chunk : chunks) {
+                rack.addRack(chunk.getRawResult(), rack.size());
+            }
+            // only the last range can stop short, at a line that is not finished yet
+            return chunks.isEmpty() ? start : chunks.get(chunks.size() - 1).getConsumed();
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * isCompressed method - whether <code>wineFile</code> starts with the gzip magic number
+     *
+     * @param wineFile path of the file
+     * @return true if the file is gzip-compressed
+     * @throws IOException if the file cannot be opened
+     */
+    public static boolean isCompressed(String wineFile) throws IOException {
+        try (InputStream in = Files.newInputStream(Paths.get(wineFile))) {
+            return (in.read() | in.read() << 8) == GZIPInputStream.GZIP_MAGIC;
+        }
+    }
+
+    /**
+     * readCompressed method - as read, but for a gzip-compressed file, which is never written out
+     * decompressed. A separate thread inflates the file into blocks ending on a line boundary and
+     * queues them up; meanwhile this thread parses them, or with <code>parallel</code> set hands each
+     * one to the common ForkJoinPool as it arrives and stitches the results back together in order.
+     *
+     * @param wineFile path of the .csv.gz file
+     * @param wineType the wine type of every sample in the file
+     * @param parallel whether blocks are parsed on the common ForkJoinPool rather than this thread
+     * @return WineSampleRack holding the samples in file order
+     * @throws IOException if the file cannot be opened or is not valid gzip data
+     * @throws IllegalArgumentException if the file is empty or a line does not have 12 columns
+     */
+    public static WineSampleRack readCompressed(String wineFile, WineType wineType, boolean parallel) throws IOException {
+        WineSampleRack rack = new WineSampleRack(wineType);
+        readCompressed(wineFile, rack, parallel);
+        return rack;
+    }
+
+    /**
+     * readCompressed method - as above, but fills an empty <code>rack</code>
+     *
+     * @param wineFile path of the .csv.gz file
+     * @param rack the empty rack to fill
+     * @param parallel whether blocks are parsed on the common ForkJoinPool rather than this thread
+     * @throws IOException if the file cannot be opened or is not valid gzip data
+     * @throws IllegalArgumentException if the file is empty or a line does not have 12 columns
+     */
+    public static void readCompressed(String wineFile, WineSampleRack rack, boolean parallel) throws IOException {
+        WineType wineType = rack.getWineType();
+        Decompressor decompressor = new Decompressor(Paths.get(wineFile));
+        Thread thread = new Thread(decompressor, "wine-decompressor");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            WineFileReader reader = new WineFileReader(rack, 1);
+            Deque<ForkJoinTask<WineSampleRack>> pending = new ArrayDeque<>();
+            ByteBuffer block;
+            while ((block = decompressor.take()) != null) {
+                if (parallel) {
+                    pending.add(new BlockTask(block, wineType).fork());
+                    // joining the oldest block keeps the stitching in file order and the memory held bounded
+                    while (pending.size() >= BLOCKS_IN_FLIGHT) {
+                        rack.addRack(join(pending.remove()), rack.size());
+                    }
+                }
+                else {
+                    reader.parseLines(block, 0, block.limit(), true);
+                }
+            }
+            while (!pending.isEmpty()) {
+                rack.addRack(join(pending.remove()), rack.size());
+            }
+            if (decompressor.isEmpty()) {
+                throw new IllegalArgumentException("File is empty. Please, provide a valid dataset.");
+            }
+
+        } finally {
+            // stops the decompressor if parsing gave up early
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * readTail method - parses only the lines added to <code>wineFile</code> since <code>offset</code>,
+     * appending them to <code>rack</code> with ids counting up from <code>firstId</code>.
+     * A last line without its newline is left alone, as it may still be being written, and so is
+     * the header line, leaving the offset at 0.
+     *
+     * @param wineFile path of the CSV file
+     * @param rack the rack to append to
+     * @param offset number of bytes already read (0 to start with the header)
+     * @param firstId id for the first appended sample
+     * @return the new offset, just past the last line read, or -1 if the file is now shorter than
+     *         <code>offset</code> (i.e. it has been rewritten rather than appended to)
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if an appended line does not have 12 columns
+     */
+    public static long readTail(String wineFile, WineSampleRack rack, long offset, int firstId) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(wineFile), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                return -1;
+            }
+            long position = offset == 0 ? nextLine(channel, 0, size) : offset;
+            if (offset == 0 && !endsLine(channel, position)) {
+                return offset; // the header is still being written, so it is read again next time
+            }
+            WineFileReader reader = new WineFileReader(rack, firstId);
+            while (position < size) {
+                long length = Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = reader.parseLines(buffer, 0, (int) length, false);
+                if (consumed == 0) {
+                    break; // only an unfinished line is left
+                }
+                position += consumed;
+            }
+            return position;
+        }
+    }
+
+    // Joins a task, rethrowing what stopped it as it was thrown (see unwrap)
+    static <T> T join(ForkJoinTask<T> task) {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+    }
+
+    // The exception a task threw itself: ForkJoinTask hands one thrown on another thread back as a copy
+    // of it, with the original as its cause (so the message would gain the class name), and a
+    // CompletableFuture wraps it in a CompletionException
+    static RuntimeException unwrap(RuntimeException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException && (cause.getClass() == e.getClass() || e instanceof CompletionException)) {
+            return unwrap((RuntimeException) cause);
+        }
+        return e;
+    }
+
+    // Whether the byte just before <code>position</code> is a newline
+    private static boolean endsLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        return position > 0 && channel.read(buffer, position - 1) == 1 && buffer.get(0) == '\n';
+    }
+
+    // Returns the offset just past the first newline at or after <code>position</code>, or <code>size</code>
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            int offset = skipLine(buffer, 0, read);
+            if (offset < read || buffer.get(read - 1) == '\n') {
+                return position + offset;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Getter for the id the next parsed sample will receive
+     *
+     * @return next sample id
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * parseLines method - parses every complete line in <code>[from, to)</code> into the rack.
+     * An unterminated line at the end of the range is only parsed when <code>last</code> is set,
+     * otherwise it is left for the caller to hand over again with the following bytes.
+     *
+     * @param buffer bytes of the file
+     * @param from offset of the first line
+     * @param to offset just past the range
+     * @param last whether the range runs to the end of the file
+     * @return offset just past the last line parsed
+     */
+    public int parseLines(ByteBuffer buffer, int from, int to, boolean last) {
+        int start = from;
+        while (start < to) {
+            int end = start;
+            while (end < to && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (end == to && !last) {
+                return start;
+            }
+            parseLine(buffer, start, end);
+            start = end + 1;
+        }
+        return to;
+    }
+
+    /**
+     * skipLine method - finds the start of the line following <code>from</code>
+     *
+     * @param buffer bytes of the file
+     * @param from offset within a line
+     * @param to offset just past the range
+     * @return offset just past the next newline, or <code>to</code> if there is none
+     */
+    public static int skipLine(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    // Parses the line held in [start, end), without its '\n', and appends it to the rack
+    private void parseLine(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        int field = 0;
+        int lastNonEmpty = -1;
+        boolean valid = true;
+        int position = start;
+        while (true) {
+            int fieldEnd = position;
+            while (fieldEnd < end && buffer.get(fieldEnd) != ';') {
+                fieldEnd++;
+            }
+            if (fieldEnd > position) {
+                lastNonEmpty = field;
+            }
+            if (field < NUMBER_OF_COLUMNS && valid) {
+                try {
+                    values[field] = parseDecimal(buffer, position, fieldEnd);
+                } catch (NumberFormatException e) {
+                    valid = false;
+                }
+            }
+            field++;
+            if (fieldEnd == end) {
+                break;
+            }
+            position = fieldEnd + 1;
+        }
+        // column count as String.split(";") would report it (trailing empty fields are dropped)
+        int columns = lastNonEmpty < 0 ? (field == 1 ? 1 : 0) : lastNonEmpty + 1;
+        if (columns != NUMBER_OF_COLUMNS) {
+            throw new IllegalArgumentException("Inadequate file format. Please, provide a valid dataset.");
+        }
+        if (!valid) {
+            System.out.println("File format is incorrect - only double values are allowed. Please, revise.");
+            return;
+        }
+        // the wine sample ID is created by this reader, it is not provided in the original files
+        rack.addSample(nextId++, values);
+    }
+
+    /**
+     * parseDecimal method - decodes a plain ASCII decimal such as <code>-0.9978</code>.
+     * Anything the fast path cannot represent exactly (exponents, very long mantissas...)
+     * is handed to Double.parseDouble, so results always match it, except that NaN and Infinity
+     * are not numbers here: lines used to be lowercased before parsing, which neither survived.
+     *
+     * @param buffer bytes of the file
+     * @param from offset of the first character
+     * @param to offset just past the last character
+     * @return the decoded value
+     * @throws NumberFormatException if the characters are not a number
+     */
+    static double parseDecimal(ByteBuffer buffer, int from, int to) {
+        int start = from;
+        int end = to;
+        // Double.parseDouble ignores surrounding whitespace, so do the same
+        while (start < end && buffer.get(start) <= ' ') start++;
+        while (end > start && buffer.get(end - 1) <= ' ') end--;
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (fractionDigits >= 0) fractionDigits++;
+                if (++digits > 18) break;
+            }
+            else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            }
+            else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && mantissa < MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : (double) mantissa;
+            return negative ? -value : value;
+        }
+        String text = ascii(buffer, start, end);
+        if (text.indexOf('N') >= 0 || text.indexOf('I') >= 0) {
+            throw new NumberFormatException("For input string: \"" + text + "\"");
+        }
+        return Double.parseDouble(text);
+    }
+
+    // Copies [from, to) out as a String, for the rare values that need the full parser
+    private static String ascii(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * ChunkTask.java
+     *
+     * Maps and parses one newline-aligned byte range of a wine file into a rack of its own,
+     * numbering its samples from 1.
+     */
+    private static class ChunkTask extends RecursiveTask<WineSampleRack> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final WineType wineType;
+        private final long start;
+        private final long end;
+        private final boolean last;
+        // offset in the file just past the last line parsed, once computed
+        private long consumed;
+
+        ChunkTask(FileChannel channel, WineType wineType, long start, long end, boolean last) {
+            this.channel = channel;
+            this.wineType = wineType;
+            this.start = start;
+            this.end = end;
+            this.last = last;
+        }
+
+        protected WineSampleRack compute() {
+            int length = (int) (end - start);
+            // a rough guess at the row count (about 60 bytes a line) saves most of the regrowth
+            WineSampleRack rack = new WineSampleRack(wineType, length / 60 + 1);
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                consumed = start + new WineFileReader(rack, 1).parseLines(buffer, 0, length, last);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return rack;
+        }
+
+        long getConsumed() {
+            return consumed;
+        }
+    }
+
+    /**
+     * BlockTask.java
+     *
+     * Parses one block of whole lines handed over by the Decompressor into a rack of its own,
+     * numbering its samples from 1.
+     */
+    private static class BlockTask extends RecursiveTask<WineSampleRack> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer block;
+        private final WineType wineType;
+
+        BlockTask(ByteBuffer block, WineType wineType) {
+            this.block = block;
+            this.wineType = wineType;
+        }
+
+        protected WineSampleRack compute() {
+            WineSampleRack rack = new WineSampleRack(wineType, block.limit() / 60 + 1);
+            new WineFileReader(rack, 1).parseLines(block, 0, block.limit(), true);
+            return rack;
+        }
+    }
+
+    /**
+     * Decompressor.java
+     *
+     * Inflates a gzip file on a thread of its own into a bounded queue of blocks, each holding whole
+     * lines only (the header line is dropped). A partial line at the end of a block is carried over
+     * to the next one. The queue ends with END; anything that stopped the decompressor is rethrown by take().
+     */
+    private static class Decompressor implements Runnable {
+
+        private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+        private final Path file;
+        private final BlockingQueue<ByteBuffer> blocks = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT);
+        private volatile Throwable failure;
+        private volatile boolean empty = true;
+
+        Decompressor(Path file) {
+            this.file = file;
+        }
+
+        public void run() {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 1 << 16)) {
+                byte[] block = new byte[BLOCK_SIZE];
+                int length = 0;
+                boolean header = true;
+                while (true) {
+                    length += in.readNBytes(block, length, block.length - length);
+                    boolean end = length < block.length;
+                    if (length > 0) {
+                        empty = false;
+                    }
+                    int cut = end ? length : lastLine(block, length);
+                    if (cut == 0 && !end) {
+                        // a line longer than the whole block: make room for the rest of it
+                        block = Arrays.copyOf(block, block.length * 2);
+                        continue;
+                    }
+                    int from = 0;
+                    if (header) {
+                        from = skipLine(ByteBuffer.wrap(block), 0, cut);
+                        header = false;
+                    }
+                    byte[] next = new byte[block.length];
+                    System.arraycopy(block, cut, next, 0, length - cut);
+                    if (cut > from) {
+                        blocks.put(ByteBuffer.wrap(block, from, cut - from).slice());
+                    }
+                    if (end) {
+                        break;
+                    }
+                    block = next;
+                    length -= cut;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException | Error e) {
+                // handed over to the parsing thread, which would otherwise wait for END forever
+                failure = e;
+            }
+            try {
+                blocks.put(END);
+            } catch (InterruptedException e) {
+                // nobody is waiting for the rest any more
+            }
+        }
+
+        // Offset just past the last newline in block[0, length), or 0 if there is none
+        private static int lastLine(byte[] block, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (block[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+
+        // Next block of whole lines, or null once the file has been read to the end
+        ByteBuffer take() throws IOException {
+            ByteBuffer block;
+            try {
+                block = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (block != END) {
+                return block;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return null;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+    }
+}
@@ -21,35 +21,18 @@ public class WineSample {
     // Instance variables
     private int id;
     private WineType type;
-    private double fixedAcidity;
-    private double volatileAcidity;
-    private double citricAcid;
-    private double residualSugar;
-    private double chlorides;
-    private double freeSulfurDioxide;
-    private double totalSulfurDioxide;
-    private double density;
-    private double pH;
-    private double sulphates;
-    private double alcohol;
-    private double quality;
+    // property values, indexed by WineProperty ordinal (null in flyweight subclasses)
+    private double[] properties;
 
     // Constructor
     public WineSample(int id, WineType type, double fixedAcidity, double volatileAcidity, double citricAcid, double residualSugar, double chlorides, double freeSulfurDioxide, double totalSulfurDioxide, double density, double pH, double sulphates, double alcohol, double quality) {
         this.id = id;
         this.type = type;
-        this.fixedAcidity = fixedAcidity;
-        this.volatileAcidity = volatileAcidity;
-        this.citricAcid = citricAcid;
-        this.residualSugar = residualSugar;
-        this.chlorides = chlorides;
-        this.freeSulfurDioxide = freeSulfurDioxide;
-        this.totalSulfurDioxide = totalSulfurDioxide;
-        this.density = density;
-        this.pH = pH;
-        this.sulphates = sulphates;
-        this.alcohol = alcohol;
-        this.quality = quality;
+        this.properties = new double[] {fixedAcidity, volatileAcidity, citricAcid, residualSugar, chlorides, freeSulfurDioxide, totalSulfurDioxide, density, pH, sulphates, alcohol, quality};
+    }
+
+    // Constructor for flyweight subclasses that keep their values elsewhere (see WineSampleRack)
+    protected WineSample() {
     }
 
     /**
@@ -59,35 +42,27 @@ public class WineSample {
      */
     public double getProperty(WineProperty property)
     {
-        switch (property)
-        {
-            case FixedAcidity:
-                return getFixedAcidity();
-            case VolatileAcidity:
-                return getVolatileAcidity();
-            case CitricAcid:
-                return getCitricAcid();
-            case ResidualSugar:
-                return getResidualSugar();
-            case Chlorides:
-                return getChlorides();
-            case FreeSulfurDioxide:
-                return getFreeSulfurDioxide();
-            case TotalSulfurDioxide:
-                return getTotalSulfurDioxide();
-            case Density:
-                return getDensity();
-            case PH:
-                return getpH();
-            case Sulphates:
-                return getSulphates();
-            case Alcohol:
-                return getAlcohol();
-            case Quality:
-                return getQuality();
-            default:
-                return -1;
-        }
+        return getProperty(property.ordinal());
+    }
+
+    /**
+     * Get the value of a property by its WineProperty ordinal, which is a plain array load
+     * rather than a switch, for loops that test the same property on many samples
+     * @param ordinal the ordinal of the wine property to select
+     * @return the value of the chosen wine property
+     */
+    public double getProperty(int ordinal)
+    {
+        return properties[ordinal];
+    }
+
+    /**
+     * Copy the values of every property into <code>target</code>, indexed by WineProperty ordinal
+     * @param target array of at least WineProperty.values().length elements
+     */
+    public void getProperties(double[] target)
+    {
+        System.arraycopy(properties, 0, target, 0, properties.length);
     }
 
     /**
@@ -105,7 +80,7 @@ public class WineSample {
      * @return fixedAcidity of WineSample object
      */
     public double getFixedAcidity() {
-        return this.fixedAcidity;
+        return properties[WineProperty.FixedAcidity.ordinal()];
     }
 
     /**
@@ -114,7 +89,7 @@ public class WineSample {
      * @return volatileAcidity of WineSample object
      */
     public double getVolatileAcidity() {
-        return this.volatileAcidity;
+        return properties[WineProperty.VolatileAcidity.ordinal()];
     }
 
     /**
@@ -123,7 +98,7 @@ public class WineSample {
      * @return citricAcid of WineSample object
      */
     public double getCitricAcid() {
-        return this.citricAcid;
+        return properties[WineProperty.CitricAcid.ordinal()];
     }
 
     /**
@@ -132,7 +107,7 @@ public class WineSample {
      * @return residualSugar of WineSample object
      */
     public double getResidualSugar() {
-        return this.residualSugar;
+        return properties[WineProperty.ResidualSugar.ordinal()];
     }
 
     /**
@@ -141,7 +116,7 @@ public class WineSample {
      * @return chlorides of WineSample object
      */
     public double getChlorides() {
-        return this.chlorides;
+        return properties[WineProperty.Chlorides.ordinal()];
     }
 
     /**
@@ -150,7 +125,7 @@ public class WineSample {
      * @return freeSulfurDioxide of WineSample object
      */
     public double getFreeSulfurDioxide() {
-        return this.freeSulfurDioxide;
+        return properties[WineProperty.FreeSulfurDioxide.ordinal()];
     }
 
     /**
@@ -159,7 +134,7 @@ public class WineSample {
      * @return totalSulfurDioxide of WineSample object
      */
     public double getTotalSulfurDioxide() {
-        return this.totalSulfurDioxide;
+        return properties[WineProperty.TotalSulfurDioxide.ordinal()];
     }
 
     /**
@@ -168,7 +143,7 @@ public class WineSample {
      * @return density of WineSample object
      */
     public double getDensity() {
-        return this.density;
+        return properties[WineProperty.Density.ordinal()];
     }
 
     /**
@@ -177,7 +152,7 @@ public class WineSample {
      * @return pH of WineSample object
      */
     public double getpH() {
-        return this.pH;
+        return properties[WineProperty.PH.ordinal()];
     }
 
     /**
@@ -186,7 +161,7 @@ public class WineSample {
      * @return sulphates of WineSample object
      */
     public double getSulphates() {
-        return this.sulphates;
+        return properties[WineProperty.Sulphates.ordinal()];
     }
 
     /**
@@ -195,7 +170,7 @@ public class WineSample {
      * @return alcohol of WineSample object
      */
     public double getAlcohol() {
-        return this.alcohol;
+        return properties[WineProperty.Alcohol.ordinal()];
     }
 
     /**
@@ -204,7 +179,7 @@ public class WineSample {
      * @return quality of WineSample object
      */
     public double getQuality() {
-        return this.quality;
+        return properties[WineProperty.Quality.ordinal()];
     }
 
     /**
@@ -231,7 +206,7 @@ public class WineSample {
      * @param fixedAcidity of WineSample object
      */
     public void setFixedAcidity(double fixedAcidity) {
-        this.fixedAcidity = fixedAcidity;
+        properties[WineProperty.FixedAcidity.ordinal()] = fixedAcidity;
     }
 
     /**
@@ -240,7 +215,7 @@ public class WineSample {
      * @param volatileAcidity of WineSample object
      */
     public void setVolatileAcidity(double volatileAcidity) {
-        this.volatileAcidity = volatileAcidity;
+        properties[WineProperty.VolatileAcidity.ordinal()] = volatileAcidity;
     }
 
     /**
@@ -249,7 +224,7 @@ public class WineSample {
      * @param citricAcid of WineSample object
      */
     public void setCitricAcid(double citricAcid) {
-        this.citricAcid = citricAcid;
+        properties[WineProperty.CitricAcid.ordinal()] = citricAcid;
     }
 
     /**
@@ -258,7 +233,7 @@ public class WineSample {
      * @param residualSugar of WineSample object
      */
     public void setResidualSugar(double residualSugar) {
-        this.residualSugar = residualSugar;
+        properties[WineProperty.ResidualSugar.ordinal()] = residualSugar;
     }
 
     /**
@@ -267,7 +242,7 @@ public class WineSample {
      * @param chlorides of WineSample object
      */
     public void setChlorides(double chlorides) {
-        this.chlorides = chlorides;
+        properties[WineProperty.Chlorides.ordinal()] = chlorides;
     }
 
     /**
@@ -276,7 +251,7 @@ public class WineSample {
      * @param freeSulfurDioxide of WineSample object
      */
     public void setFreeSulfurDioxide(double freeSulfurDioxide) {
-        this.freeSulfurDioxide = freeSulfurDioxide;
+        properties[WineProperty.FreeSulfurDioxide.ordinal()] = freeSulfurDioxide;
     }
 
     /**
@@ -285,7 +260,7 @@ public class WineSample {
      * @param totalSulfurDioxide of WineSample object
      */
     public void setTotalSulfurDioxide(double totalSulfurDioxide) {
-        this.totalSulfurDioxide = totalSulfurDioxide;
+        properties[WineProperty.TotalSulfurDioxide.ordinal()] = totalSulfurDioxide;
     }
 
     /**
@@ -294,7 +269,7 @@ public class WineSample {
      * @param density of WineSample object
      */
     public void setDensity(double density) {
-        this.density = density;
+        properties[WineProperty.Density.ordinal()] = density;
     }
 
     /**
@@ -303,7 +278,7 @@ public class WineSample {
      * @param pH of WineSample object
      */
     public void setpH(double pH) {
-        this.pH = pH;
+        properties[WineProperty.PH.ordinal()] = pH;
     }
 
     /**
@@ -312,7 +287,7 @@ public class WineSample {
      * @param sulphates of WineSample object
      */
     public void setSulphates(double sulphates) {
-        this.sulphates = sulphates;
+        properties[WineProperty.Sulphates.ordinal()] = sulphates;
     }
 
     /**
@@ -321,7 +296,7 @@ public class WineSample {
      * @param alcohol of WineSample object
      */
     public void setAlcohol(double alcohol) {
-        this.alcohol = alcohol;
+        properties[WineProperty.Alcohol.ordinal()] = alcohol;
     }
 
     /**
@@ -330,7 +305,7 @@ public class WineSample {
      * @param quality of WineSample object
      */
     public void setQuality(int quality) {
-        this.quality = quality;
+        properties[WineProperty.Quality.ordinal()] = quality;
     }
 
     /**
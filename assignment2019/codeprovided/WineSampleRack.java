@@ -0,0 +1,684 @@
+package assignment2019.codeprovided;
+
+import java.util.*;
+
+/**
+ * WineSampleRack.java
+ *
+ * Columnar (struct-of-arrays) store for the wine samples of a single WineType.
+ * Each WineProperty is held in its own contiguous WineColumn, indexed by row, alongside
+ * an int[] column of sample ids. Columns start out as plain doubles; compact() re-encodes
+ * each one in the smallest exact form (see WineColumn). A value added later that an encoded
+ * column cannot hold widens that column back to plain doubles, a single copy, and recompact()
+ * re-encodes widened columns in bulk once the rack has grown enough to be worth it.
+ * Racks created while off-heap storage is on (see setOffHeap) keep their ids and columns in
+ * direct buffers outside the Java heap instead, so heap usage does not grow with their size. The rack is still a List of WineSample,
+ * but get() hands out lightweight flyweight views onto a row rather than stored objects.
+ * Rows can only be appended; the minimum, maximum and sum of each column are kept up to date
+ * as they are, so the cellar statistics never need to rescan the rack. A single new row is folded
+ * in on the spot; the minima and maxima of a large batch of rows are found a segment at a time
+ * across cores (see RackSegments). Sums are always added up in row order, one row after another,
+ * so they come out the same on any machine and however the rows arrived.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class WineSampleRack extends AbstractList<WineSample> implements RandomAccess {
+
+    // Number of numeric columns held per sample
+    static final int NUMBER_OF_PROPERTIES = WineProperty.values().length;
+    private static final int DEFAULT_CAPACITY = 1024;
+    // Most query plans kept per rack (see getPlan)
+    private static final int MAX_PLANS = 64;
+
+    // whether racks created from now on keep their data off the heap
+    private static volatile boolean offHeap;
+
+    // Instance variables
+    private final WineType wineType;
+    private int size;
+    private int capacity;
+    // exactly one of ids and offHeapIds holds the id column
+    private int[] ids;
+    private OffHeapColumn offHeapIds;
+    private WineColumn[] columns;
+
+    // Running statistics per column, extended as rows are added rather than rescanned
+    private final double[] min = new double[NUMBER_OF_PROPERTIES];
+    private final double[] max = new double[NUMBER_OF_PROPERTIES];
+    private final double[] sum = new double[NUMBER_OF_PROPERTIES];
+    private int maxId;
+    // set when a value is overwritten, as that can only be handled by a rescan
+    private boolean statisticsStale;
+    // bumped by every change to the rows, so that results derived from them can tell they are out of date
+    private int version;
+    // rows held when compact() last ran, and the columns widened to plain doubles since (see store)
+    private int compactedSize;
+    private final boolean[] widened = new boolean[NUMBER_OF_PROPERTIES];
+
+    // Sorted indexes by property, built when first asked for (see getIndex)
+    private final PropertyIndex[] indexes = new PropertyIndex[NUMBER_OF_PROPERTIES];
+    private final BitmapIndex[] bitmapIndexes = new BitmapIndex[NUMBER_OF_PROPERTIES];
+    // Value histograms by property, for the query planner (see getHistogram and analyze)
+    private final ColumnHistogram[] histograms = new ColumnHistogram[NUMBER_OF_PROPERTIES];
+    // Plans of the queries run over the rack lately, least recently used first (see getPlan). They hold
+    // while the rows, the columns, the indexes built and the planner's settings are as they were planned for
+    private final Map<CompiledQuery, QueryPlan> plans = new LinkedHashMap<CompiledQuery, QueryPlan>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<CompiledQuery, QueryPlan> eldest) {
+            return size() > MAX_PLANS;
+        }
+    };
+    // bumped whenever a column is re-encoded or an index built from scratch, which plans depend on as well as the rows
+    private int layout;
+    private int plannedVersion;
+    private int plannedLayout;
+    private int plannedSettings;
+
+    // Constructors
+    public WineSampleRack(WineType wineType) {
+        this(wineType, DEFAULT_CAPACITY);
+    }
+
+    public WineSampleRack(WineType wineType, int capacity) {
+        this.wineType = wineType;
+        this.capacity = Math.max(capacity, 1);
+        this.columns = new WineColumn[NUMBER_OF_PROPERTIES];
+        if (offHeap) {
+            this.offHeapIds = new OffHeapColumn(Integer.BYTES, this.capacity);
+            for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+                columns[p] = new OffHeapColumn(Double.BYTES, this.capacity);
+            }
+        }
+        else {
+            this.ids = new int[this.capacity];
+            for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+                columns[p] = new DoubleColumn(this.capacity);
+            }
+        }
+        resetStatistics();
+    }
+
+    // Constructor taking over columns that have already been filled, and encoded if they were, without copying
+    // them (see WineCellarSnapshot). The statistics are rescanned when first read, unless restore is called
+    WineSampleRack(WineType wineType, int[] ids, WineColumn[] columns, int size) {
+        this.wineType = wineType;
+        this.capacity = ids.length;
+        this.ids = ids;
+        this.columns = columns;
+        this.size = size;
+        statisticsStale = true;
+    }
+
+    // Off-heap counterpart of the above
+    WineSampleRack(WineType wineType, OffHeapColumn ids, OffHeapColumn[] columns, int size) {
+        this.wineType = wineType;
+        this.capacity = Math.max(size, 1);
+        this.offHeapIds = ids;
+        this.columns = Arrays.copyOf(columns, NUMBER_OF_PROPERTIES, WineColumn[].class);
+        this.size = size;
+        statisticsStale = true;
+    }
+
+    // Puts back the statistics, histograms and rows last compacted of the rack as it was saved (see WineCellarSnapshot)
+    void restore(double[] min, double[] max, double[] sum, int maxId, ColumnHistogram[] histograms, int compactedSize) {
+        System.arraycopy(min, 0, this.min, 0, NUMBER_OF_PROPERTIES);
+        System.arraycopy(max, 0, this.max, 0, NUMBER_OF_PROPERTIES);
+        System.arraycopy(sum, 0, this.sum, 0, NUMBER_OF_PROPERTIES);
+        this.maxId = maxId;
+        statisticsStale = false;
+        System.arraycopy(histograms, 0, this.histograms, 0, NUMBER_OF_PROPERTIES);
+        this.compactedSize = compactedSize;
+    }
+
+    // Rows held when compact() last ran, for WineCellarSnapshot
+    int getCompactedSize() {
+        return compactedSize;
+    }
+
+    /**
+     * setOffHeap method - chooses where racks created from now on keep their data. Off-heap data is
+     * limited by -XX:MaxDirectMemorySize rather than -Xmx, though by default the two are the same.
+     *
+     * @param enabled true for direct buffers outside the heap, false for (compactable) heap arrays
+     */
+    public static void setOffHeap(boolean enabled) {
+        offHeap = enabled;
+    }
+
+    /**
+     * isOffHeap method - whether racks created from now on keep their data off the heap
+     *
+     * @return true if new racks are created off-heap
+     */
+    public static boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Getter for the wineType shared by every sample in the rack
+     *
+     * @return wineType of the rack
+     */
+    public WineType getWineType() {
+        return wineType;
+    }
+
+    /**
+     * size method - number of samples (rows) held in the rack
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * get method - returns a flyweight WineSample reading and writing through to the given row
+     *
+     * @param row index of the sample in the rack
+     * @return WineSample view of the row
+     */
+    public WineSample get(int row) {
+        Objects.checkIndex(row, size);
+        return new RackedWineSample(this, row);
+    }
+
+    /**
+     * add method - appends a copy of the values held by <code>sample</code> as a new row
+     *
+     * @param sample the WineSample to copy into the rack
+     * @return true, as the rack always changes
+     */
+    public boolean add(WineSample sample) {
+        int row = addRow(sample.getId());
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            store(p, row, sample.getProperty(p));
+        }
+        rowsAdded(row);
+        return true;
+    }
+
+    /**
+     * addSample method - appends a new row built from an id and one value per WineProperty
+     *
+     * @param id the sample id
+     * @param values property values, indexed by WineProperty ordinal
+     */
+    public void addSample(int id, double[] values) {
+        int row = addRow(id);
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            store(p, row, values[p]);
+        }
+        rowsAdded(row);
+    }
+
+    /**
+     * Getter for the id of the sample held at <code>row</code>
+     *
+     * @param row index of the sample in the rack
+     * @return id of the sample
+     */
+    public int getId(int row) {
+        return ids != null ? ids[row] : offHeapIds.getInt(row);
+    }
+
+    /**
+     * copyIdsTo method - copies the ids of rows [0, count) into <code>target</code>
+     *
+     * @param target array to fill
+     * @param count number of rows to copy
+     */
+    public void copyIdsTo(int[] target, int count) {
+        for (int row = 0; row < count; row++) {
+            target[row] = getId(row);
+        }
+    }
+
+    /**
+     * Getter for a single property value of the sample held at <code>row</code>
+     *
+     * @param row index of the sample in the rack
+     * @param property the wine property to select
+     * @return the value of the chosen wine property
+     */
+    public double getValue(int row, WineProperty property) {
+        return columns[property.ordinal()].get(row);
+    }
+
+    /**
+     * Getter for a single property value of the sample held at <code>row</code>, by property ordinal
+     *
+     * @param row index of the sample in the rack
+     * @param ordinal WineProperty ordinal of the property to read
+     * @return value of the property
+     */
+    public double getValue(int row, int ordinal) {
+        return columns[ordinal].get(row);
+    }
+
+    /**
+     * Setter for a single property value of the sample held at <code>row</code>
+     *
+     * @param row index of the sample in the rack
+     * @param property the wine property to update
+     * @param value the new value
+     */
+    public void setValue(int row, WineProperty property, double value) {
+        store(property.ordinal(), row, value);
+        statisticsStale = true;
+        version++;
+        indexes[property.ordinal()] = null;
+        bitmapIndexes[property.ordinal()] = null;
+        histograms[property.ordinal()] = null;
+    }
+
+    /**
+     * getColumn method - returns the column holding a property.
+     * Only the first size() rows are meaningful; it is exposed so that scans and predicates
+     * can run straight over the column's contiguous (and possibly encoded) values.
+     *
+     * @param property the wine property to select
+     * @return WineColumn for the property
+     */
+    public WineColumn getColumn(WineProperty property) {
+        return columns[property.ordinal()];
+    }
+
+    /**
+     * getIndex method - returns a sorted index over a property column, building it on first use.
+     * Rows added since are merged into it (see PropertyIndex.extend); it is rebuilt if a value of
+     * the property has been changed since.
+     *
+     * @param property the wine property to select
+     * @return PropertyIndex over the rows of the rack
+     */
+    public PropertyIndex getIndex(WineProperty property) {
+        PropertyIndex index = indexes[property.ordinal()];
+        if (index == null || index.size() != size) {
+            WineColumn column = columns[property.ordinal()];
+            if (index == null) {
+                index = new PropertyIndex(column, size);
+                layout++;
+            }
+            else {
+                index = index.extend(column, size);
+            }
+            indexes[property.ordinal()] = index;
+        }
+        return index;
+    }
+
+    /**
+     * getBitmapIndex method - returns a bitmap index over a property column, building it on first use.
+     * Like getIndex, rows added since are added to its bins (see BitmapIndex.extend), and it is
+     * rebuilt if a value of the property has been changed since.
+     *
+     * @param property the wine property to select
+     * @return BitmapIndex over the rows of the rack
+     */
+    public BitmapIndex getBitmapIndex(WineProperty property) {
+        BitmapIndex index = bitmapIndexes[property.ordinal()];
+        if (index == null || index.size() != size) {
+            WineColumn column = columns[property.ordinal()];
+            BitmapIndex extended = index == null ? null : index.extend(column, size);
+            if (extended == null) {
+                extended = new BitmapIndex(column, getIndex(property));
+                layout++;
+            }
+            index = extended;
+            bitmapIndexes[property.ordinal()] = index;
+        }
+        return index;
+    }
+
+    /**
+     * hasIndex method - whether an up-to-date sorted index over a property has been built already,
+     * so that getIndex would not have to build one
+     *
+     * @param property the wine property to select
+     * @return true if the index is ready
+     */
+    public boolean hasIndex(WineProperty property) {
+        PropertyIndex index = indexes[property.ordinal()];
+        return index != null && index.size() == size;
+    }
+
+    /**
+     * hasBitmapIndex method - whether an up-to-date bitmap index over a property has been built already
+     *
+     * @param property the wine property to select
+     * @return true if the bitmap index is ready
+     */
+    public boolean hasBitmapIndex(WineProperty property) {
+        BitmapIndex index = bitmapIndexes[property.ordinal()];
+        return index != null && index.size() == size;
+    }
+
+    /**
+     * getHistogram method - returns the value histogram of a property column, building it if
+     * analyze has not (or a value of the property has been changed since). Rows added since are
+     * counted into it, unless their values no longer fit it (see ColumnHistogram.extend).
+     *
+     * @param property the wine property to select
+     * @return ColumnHistogram of the rows of the rack
+     */
+    public ColumnHistogram getHistogram(WineProperty property) {
+        ColumnHistogram histogram = histograms[property.ordinal()];
+        if (histogram == null || histogram.size() != size) {
+            WineColumn column = columns[property.ordinal()];
+            ColumnHistogram extended = histogram == null ? null : histogram.extend(column, size);
+            histogram = extended != null ? extended : new ColumnHistogram(column, size);
+            histograms[property.ordinal()] = histogram;
+        }
+        return histogram;
+    }
+
+    /**
+     * analyze method - builds the histogram of every column up front, so that the first queries
+     * are planned without waiting for them. The cellar does not call it: each histogram is built
+     * the first time the planner needs it, so a load pays only for the columns actually queried.
+     */
+    public void analyze() {
+        for (WineProperty property : WineProperty.values()) {
+            getHistogram(property);
+        }
+    }
+
+    /**
+     * compact method - re-encodes every column in the most compact form that still holds
+     * its values exactly (see WineColumn.encode). Rows can still be added afterwards. A rack with
+     * no rows added or columns widened since it was last compacted (e.g. one opened from a
+     * snapshot of a compacted rack) is left as it is.
+     */
+    public void compact() {
+        // encoded columns live on the heap, so off-heap racks are left as they are
+        if (size == 0 || offHeapIds != null || (size == compactedSize && !anyWidened())) {
+            return;
+        }
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            columns[p] = WineColumn.encode(columns[p].decode(size), size, capacity);
+            columnReplaced(p);
+        }
+        Arrays.fill(widened, false);
+        compactedSize = size;
+    }
+
+    /**
+     * recompact method - re-encodes the columns that have been widened to plain doubles since compact()
+     * last ran, once the rack has grown by half since then, so that rows appended a few at a time
+     * are re-encoded in bulk every so often rather than each time a value does not fit
+     */
+    public void recompact() {
+        if (size - compactedSize < compactedSize / 2) {
+            return;
+        }
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            if (widened[p]) {
+                columns[p] = WineColumn.encode(columns[p].decode(size), size, capacity);
+                columnReplaced(p);
+                widened[p] = false;
+            }
+        }
+        compactedSize = size;
+    }
+
+    /**
+     * addRack method - appends every row of another rack, shifting its ids by <code>idOffset</code>.
+     * Used to stitch together racks that were filled independently (e.g. one per file chunk).
+     *
+     * @param other the rack to copy rows from
+     * @param idOffset amount added to each copied id
+     */
+    public void addRack(WineSampleRack other, int idOffset) {
+        int from = size;
+        ensureCapacity(size + other.size);
+        for (int row = 0; row < other.size; row++) {
+            putId(size + row, other.getId(row) + idOffset);
+        }
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            if (columns[p] instanceof DoubleColumn && other.columns[p] instanceof DoubleColumn) {
+                ((DoubleColumn) columns[p]).put(size, (DoubleColumn) other.columns[p], other.size);
+                continue;
+            }
+            for (int row = 0; row < other.size; row++) {
+                store(p, size + row, other.columns[p].get(row));
+            }
+        }
+        size += other.size;
+        modCount++;
+        version++;
+        rowsAdded(from);
+    }
+
+    /**
+     * Getter for the highest value of a property column
+     *
+     * @param property the wine property to select
+     * @return highest value, or negative infinity if the rack is empty
+     */
+    public double getMax(WineProperty property) {
+        refreshStatistics();
+        return max[property.ordinal()];
+    }
+
+    /**
+     * Getter for the lowest value of a property column
+     *
+     * @param property the wine property to select
+     * @return lowest value, or positive infinity if the rack is empty
+     */
+    public double getMin(WineProperty property) {
+        refreshStatistics();
+        return min[property.ordinal()];
+    }
+
+    /**
+     * Getter for the sum of a property column, summed in row order
+     *
+     * @param property the wine property to select
+     * @return sum of the column
+     */
+    public double getSum(WineProperty property) {
+        refreshStatistics();
+        return sum[property.ordinal()];
+    }
+
+    /**
+     * Getter for the version of the rack's contents, which changes whenever rows are added
+     * or a value is overwritten (see QueryCache)
+     *
+     * @return version number
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter for the highest sample id in the rack
+     *
+     * @return highest id, or 0 if the rack is empty
+     */
+    public int getMaxId() {
+        refreshStatistics();
+        return maxId;
+    }
+
+    // Folds rows [from, size) into the running statistics
+    private void rowsAdded(int from) {
+        if (statisticsStale) {
+            return; // everything will be rescanned on the next read anyway
+        }
+        if (!RackSegments.isParallel(size - from)) {
+            // e.g. the single row of addSample: one pass on this thread, nothing allocated
+            for (int row = from; row < size; row++) {
+                maxId = Math.max(maxId, getId(row));
+            }
+            for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+                WineColumn column = columns[p];
+                double low = min[p], high = max[p], total = sum[p];
+                for (int row = from; row < size; row++) {
+                    double value = column.get(row);
+                    low = Math.min(low, value);
+                    high = Math.max(high, value);
+                    total += value;
+                }
+                min[p] = low;
+                max[p] = high;
+                sum[p] = total;
+            }
+            return;
+        }
+        // minima and maxima come out the same however the rows are split, so a large batch is split across cores...
+        for (double[] segment : RackSegments.map(from, size, this::extremes)) {
+            for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+                min[p] = Math.min(min[p], segment[p]);
+                max[p] = Math.max(max[p], segment[NUMBER_OF_PROPERTIES + p]);
+            }
+            maxId = Math.max(maxId, (int) segment[2 * NUMBER_OF_PROPERTIES]);
+        }
+        // ...but sums depend on the order of the additions, so they are added up in row order
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            WineColumn column = columns[p];
+            double total = sum[p];
+            for (int row = from; row < size; row++) {
+                total += column.get(row);
+            }
+            sum[p] = total;
+        }
+    }
+
+    // Minimum and maximum of each column over rows [from, to), then the highest id
+    private double[] extremes(int from, int to) {
+        double[] extremes = new double[2 * NUMBER_OF_PROPERTIES + 1];
+        int highestId = 0;
+        for (int row = from; row < to; row++) {
+            highestId = Math.max(highestId, getId(row));
+        }
+        for (int p = 0; p < NUMBER_OF_PROPERTIES; p++) {
+            WineColumn column = columns[p];
+            double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+            for (int row = from; row < to; row++) {
+                double value = column.get(row);
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+            extremes[p] = low;
+            extremes[NUMBER_OF_PROPERTIES + p] = high;
+        }
+        extremes[2 * NUMBER_OF_PROPERTIES] = highestId;
+        return extremes;
+    }
+
+    // Moves the indexes of a re-encoded column over to the new column, as they read values through the one
+    // they were built on and would keep it alive (the values, and so the order of the rows, are the same)
+    private void columnReplaced(int p) {
+        layout++;
+        if (indexes[p] != null) {
+            indexes[p] = indexes[p].extend(columns[p], indexes[p].size());
+        }
+        if (bitmapIndexes[p] != null) {
+            bitmapIndexes[p] = bitmapIndexes[p].extend(columns[p], bitmapIndexes[p].size());
+        }
+    }
+
+    /**
+     * getPlan method - the plan kept for a query over the rack by putPlan, as long as the rack and
+     * the planner's settings have not changed since (see QueryPlanner.plan)
+     *
+     * @param query the compiled conditions
+     * @param settings the planner's settings, as QueryPlanner sums them up
+     * @return QueryPlan kept for the query, or null if there is none
+     */
+    synchronized QueryPlan getPlan(CompiledQuery query, int settings) {
+        if (plannedVersion != version || plannedLayout != layout || plannedSettings != settings) {
+            plans.clear();
+            plannedVersion = version;
+            plannedLayout = layout;
+            plannedSettings = settings;
+        }
+        return plans.get(query);
+    }
+
+    /**
+     * putPlan method - keeps the plan of a query over the rack, for getPlan
+     *
+     * @param query the compiled conditions
+     * @param plan the plan for the rack as it is now
+     */
+    synchronized void putPlan(CompiledQuery query, QueryPlan plan) {
+        plans.put(query, plan);
+    }
+
+    // Whether a column has been widened to plain doubles since compact() last ran
+    private boolean anyWidened() {
+        for (boolean columnWidened : widened) {
+            if (columnWidened) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Rescans every row if a value has been overwritten since the statistics were last built
+    private void refreshStatistics() {
+        if (statisticsStale) {
+            statisticsStale = false;
+            resetStatistics();
+            rowsAdded(0);
+        }
+    }
+
+    private void resetStatistics() {
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        Arrays.fill(sum, 0);
+        maxId = 0;
+    }
+
+    // Grows every column so that at least <code>capacity</code> rows fit
+    void ensureCapacity(int capacity) {
+        if (capacity > this.capacity) {
+            capacity = Math.max(capacity, this.capacity + (this.capacity >> 1) + 1);
+            if (ids != null) {
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            else {
+                offHeapIds.ensureCapacity(capacity);
+            }
+            for (WineColumn column : columns) {
+                column.ensureCapacity(capacity);
+            }
+            this.capacity = capacity;
+        }
+    }
+
+    private void putId(int row, int id) {
+        if (ids != null) {
+            ids[row] = id;
+        }
+        else {
+            offHeapIds.setInt(row, id);
+        }
+    }
+
+    // Writes a value into a column, widening the column to plain doubles if its encoding cannot hold the value
+    private void store(int p, int row, double value) {
+        if (!columns[p].set(row, value)) {
+            double[] values = new double[capacity];
+            columns[p].copyTo(values, Math.max(size, row + 1));
+            values[row] = value;
+            columns[p] = new DoubleColumn(values);
+            widened[p] = true;
+        }
+    }
+
+    // Reserves a new row, growing every column if needed, and returns its index
+    private int addRow(int id) {
+        ensureCapacity(size + 1);
+        putId(size, id);
+        modCount++;
+        version++;
+        return size++;
+    }
+}
@@ -0,0 +1,127 @@
+package assignment2019.codeprovided;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * WineSampleRackView.java
+ *
+ * Read-only List of WineSample laid over several racks back to back, e.g. the RED and WHITE
+ * racks seen as the ALL list. Nothing is copied: construction is O(1), rows appended to a
+ * rack show up in the view straight away, and get() hands out the racks' own flyweights.
+ * Its spliterator walks the racks directly and splits on row counts, so parallel streams
+ * over the view divide evenly.
+ *
+ * @version 1.0
+ * @author Jamie Huddlestone
+ */
+
+public class WineSampleRackView extends AbstractList<WineSample> implements RandomAccess {
+
+    // Instance variables
+    private final List<WineSampleRack> racks;
+
+    // Constructor
+    public WineSampleRackView(WineSampleRack... racks) {
+        this.racks = Collections.unmodifiableList(Arrays.asList(racks));
+    }
+
+    /**
+     * Getter for the racks making up the view, in order
+     *
+     * @return List of WineSampleRack partitions
+     */
+    public List<WineSampleRack> getWineSampleRacks() {
+        return racks;
+    }
+
+    /**
+     * size method - number of samples across all of the racks
+     *
+     * @return total number of rows
+     */
+    public int size() {
+        int size = 0;
+        for (WineSampleRack rack : racks) {
+            size += rack.size();
+        }
+        return size;
+    }
+
+    /**
+     * get method - returns the flyweight for the <code>index</code>-th sample across the racks
+     *
+     * @param index position of the sample in the view
+     * @return WineSample view of the row
+     */
+    public WineSample get(int index) {
+        int row = index;
+        for (WineSampleRack rack : racks) {
+            if (row >= 0 && row < rack.size()) {
+                return rack.get(row);
+            }
+            row -= rack.size();
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    public Spliterator<WineSample> spliterator() {
+        return new RackSpliterator(0, size());
+    }
+
+    /**
+     * RackSpliterator.java
+     *
+     * Spliterator over positions [index, end) of the view. Splits in half by position, and
+     * traverses one rack at a time so that each row is reached without searching for its rack.
+     */
+    private class RackSpliterator implements Spliterator<WineSample> {
+
+        private int index;
+        private final int end;
+
+        RackSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        public boolean tryAdvance(Consumer<? super WineSample> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(get(index++));
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super WineSample> action) {
+            int start = 0;
+            for (WineSampleRack rack : racks) {
+                int from = Math.max(index, start) - start;
+                int to = Math.min(end, start + rack.size()) - start;
+                for (int row = from; row < to; row++) {
+                    action.accept(rack.get(row));
+                }
+                start += rack.size();
+            }
+            index = end;
+        }
+
+        public Spliterator<WineSample> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            RackSpliterator prefix = new RackSpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return end - index;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+}